@@ -0,0 +1,504 @@
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+import org.slf4j.helpers.Util;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MyLogger的异步分发模式：调用线程把事件写入预分配的有界环形缓冲区(多生产者多消费者)，
+ * 由后台消费线程格式化后交给后端logger，慢的appender不再阻塞业务线程
+ * <p>
+ * 参数只保存引用，在消费线程中才格式化，因此日志参数在记录之后不应再被修改
+ * </p>
+ * <p>
+ * 记录时的{@link LogContext}随事件传到消费线程；slf4j的MDC默认也在记录时复制一份
+ * (MDC.getCopyOfContextMap()，MDC不为空时每条日志复制一个Map)，消费线程分发期间设为它的MDC，
+ * appender中的%X{...}与同步模式一致。只使用LogContext时可以用captureMdc=false关闭复制，
+ * 此时直接MDC.put的值在异步模式下取不到
+ * </p>
+ */
+public final class AsyncLogDispatcher {
+    /**
+     * 消费线程在缓冲区为空时的等待方式
+     */
+    public enum WaitStrategy {
+        /**
+         * 一直自旋，延迟最低，占满一个CPU
+         */
+        BUSY_SPIN,
+        /**
+         * 自旋之后Thread.yield()
+         */
+        YIELDING,
+        /**
+         * 自旋、yield之后parkNanos，CPU占用与延迟的折中
+         */
+        SLEEPING,
+        /**
+         * 使用锁和条件变量等待，CPU占用最低
+         */
+        BLOCKING
+    }
+
+    /**
+     * 缓冲区满时生产者的处理方式
+     */
+    public enum QueueFullPolicy {
+        /**
+         * 等待消费线程腾出空间
+         */
+        WAIT,
+        /**
+         * 丢弃事件并计数
+         */
+        DISCARD,
+        /**
+         * 在调用线程同步分发
+         */
+        SYNCHRONOUS
+    }
+
+    private final static int SPIN_TRIES = 100;
+    private final static int YIELD_TRIES = 100;
+    private final static long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private final static long BLOCKING_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private final static long DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = 5000;
+    private final static int PUBLISHING_STRIPES =
+            Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+    /**
+     * 条带间隔16个long(128字节)，避免相邻条带伪共享
+     */
+    private final static int PUBLISHING_PADDING = 16;
+
+    private final Slot[] slots;
+    private final int mask;
+    private final int consumerCount;
+    private final WaitStrategy waitStrategy;
+    private final QueueFullPolicy queueFullPolicy;
+    private final boolean includeLocation;
+    private final boolean captureMdc;
+    private final AtomicLong enqueuePos = new AtomicLong();
+    private final AtomicLong dequeuePos = new AtomicLong();
+    private final LongAdder discarded = new LongAdder();
+    /**
+     * 已经通过running检查、还没有写完槽位的生产者数，shutdown等它归零后再做最后一次处理。
+     * 按线程id分条带计数，每个条带单独占一段缓存行，生产者之间不竞争同一个计数；
+     * 不用LongAdder是因为它的线程会换cell，加1和减1可能落在不同cell上，sum()读到0时不能保证没有生产者
+     */
+    private final AtomicLongArray publishing = new AtomicLongArray(PUBLISHING_STRIPES * PUBLISHING_PADDING);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private volatile int blockedConsumers = 0;
+    private volatile boolean running = false;
+    private ConsumerThread[] consumers;
+
+    /**
+     * @param capacity        缓冲区大小，向上取整为2的幂
+     * @param consumerCount   消费线程数
+     * @param includeLocation 是否在调用线程取调用位置(类.方法(行号))，后端为LocationAwareLogger时
+     *                        异步模式下后端自己取不到调用位置
+     */
+    public AsyncLogDispatcher(int capacity, int consumerCount, WaitStrategy waitStrategy,
+                              QueueFullPolicy queueFullPolicy, boolean includeLocation) {
+        this(capacity, consumerCount, waitStrategy, queueFullPolicy, includeLocation, true);
+    }
+
+    /**
+     * @param captureMdc 是否在调用线程复制slf4j的MDC，在消费线程分发时恢复
+     */
+    public AsyncLogDispatcher(int capacity, int consumerCount, WaitStrategy waitStrategy,
+                              QueueFullPolicy queueFullPolicy, boolean includeLocation, boolean captureMdc) {
+        if (capacity < 2 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        if (consumerCount < 1) {
+            throw new IllegalArgumentException("consumerCount: " + consumerCount);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(i);
+        }
+        this.mask = size - 1;
+        this.consumerCount = consumerCount;
+        this.waitStrategy = waitStrategy;
+        this.queueFullPolicy = queueFullPolicy;
+        this.includeLocation = includeLocation;
+        this.captureMdc = captureMdc;
+    }
+
+    /**
+     * 系统属性mylogger.async=true时按以下属性创建并启动，并在JVM退出时处理完剩余事件：
+     * mylogger.async.capacity、mylogger.async.consumers、mylogger.async.waitStrategy、
+     * mylogger.async.queueFullPolicy、mylogger.async.includeLocation、mylogger.async.captureMdc(默认true)
+     *
+     * @return 未开启时返回null
+     */
+    static AsyncLogDispatcher fromSystemProperties() {
+        if (!Boolean.getBoolean("mylogger.async")) {
+            return null;
+        }
+        final AsyncLogDispatcher dispatcher = new AsyncLogDispatcher(
+                Integer.getInteger("mylogger.async.capacity", 8192),
+                Integer.getInteger("mylogger.async.consumers", 1),
+                WaitStrategy.valueOf(System.getProperty("mylogger.async.waitStrategy", WaitStrategy.SLEEPING.name())),
+                QueueFullPolicy.valueOf(System.getProperty("mylogger.async.queueFullPolicy", QueueFullPolicy.WAIT.name())),
+                Boolean.getBoolean("mylogger.async.includeLocation"),
+                Boolean.parseBoolean(System.getProperty("mylogger.async.captureMdc", "true")));
+        dispatcher.start();
+        Runtime.getRuntime().addShutdownHook(new Thread("MyLogger-async-shutdown") {
+            @Override
+            public void run() {
+                dispatcher.shutdown();
+            }
+        });
+        return dispatcher;
+    }
+
+    public synchronized void start() {
+        if (consumers != null) {
+            return;
+        }
+        running = true;
+        consumers = new ConsumerThread[consumerCount];
+        for (int i = 0; i < consumerCount; i++) {
+            consumers[i] = new ConsumerThread("MyLogger-async-" + i);
+            consumers[i].start();
+        }
+    }
+
+    public boolean shutdown() {
+        return shutdown(DEFAULT_SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止接收新事件(之后的事件在调用线程同步分发)，等待正在写入的生产者完成和消费线程处理完缓冲区；
+     * 超时后消费线程可能还在运行，剩余事件在当前线程与它们一起处理，不会丢弃
+     *
+     * @return 消费线程是否在超时之前全部退出
+     */
+    public synchronized boolean shutdown(long timeout, TimeUnit unit) {
+        if (consumers == null || !running) {
+            return true;
+        }
+        running = false;
+        // 之后开始的publish都会看到running为false；等待已经通过检查的生产者写完
+        while (publishingCount() > 0) {
+            Thread.yield();
+        }
+        signalConsumers();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean terminated = true;
+        for (ConsumerThread consumer : consumers) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            try {
+                if (remaining > 0) {
+                    consumer.join(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            terminated &= !consumer.isAlive();
+        }
+        // 多消费者队列，消费线程仍在运行时在当前线程一起处理也是安全的
+        while (consumeOne()) {
+            // 处理剩余事件
+        }
+        return terminated;
+    }
+
+    boolean isIncludeLocation() {
+        return includeLocation;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return 缓冲区中等待处理的事件数(近似值)
+     */
+    public long getBacklog() {
+        return Math.max(0, enqueuePos.get() - dequeuePos.get());
+    }
+
+    /**
+     * @return 因缓冲区满被丢弃的事件数
+     */
+    public long getDiscardedCount() {
+        return discarded.sum();
+    }
+
+    /**
+     * 写入一个事件
+     *
+     * @return false表示未写入，调用方应同步分发
+     */
+    boolean publish(MyLogger logger, Marker marker, int level, String format, int argCount,
+                    Object arg1, Object arg2, Object[] argArray, Throwable t,
+                    int primitiveTypes, long prim1, long prim2,
+                    String threadPrefix, StackTraceElement caller, LogContext context) {
+        if (Thread.currentThread() instanceof ConsumerThread) {
+            // 消费线程中(如appender内部)记录的日志直接同步分发，避免缓冲区满时自己等待自己
+            return false;
+        }
+        // 加1和减1必须在同一个条带上
+        int stripe = publishingStripe();
+        publishing.incrementAndGet(stripe);
+        try {
+            if (!running) {
+                return false;
+            }
+            Map<String, String> mdc = captureMdc ? MDC.getCopyOfContextMap() : null;
+            if (mdc != null && mdc.isEmpty()) {
+                mdc = null;
+            }
+            int idle = 0;
+            long pos = enqueuePos.get();
+            for (; ; ) {
+                Slot slot = slots[(int) (pos & mask)];
+                long dif = slot.sequence - pos;
+                if (dif == 0) {
+                    if (enqueuePos.compareAndSet(pos, pos + 1)) {
+                        slot.set(logger, marker, level, format, argCount, arg1, arg2, argArray, t,
+                                primitiveTypes, prim1, prim2, threadPrefix, caller, context, mdc);
+                        slot.sequence = pos + 1;
+                        if (blockedConsumers > 0) {
+                            signalConsumers();
+                        }
+                        return true;
+                    }
+                } else if (dif < 0) {
+                    if (queueFullPolicy == QueueFullPolicy.DISCARD) {
+                        discarded.increment();
+                        return true;
+                    }
+                    if (queueFullPolicy == QueueFullPolicy.SYNCHRONOUS || !running) {
+                        return false;
+                    }
+                    idle = backOff(idle);
+                }
+                pos = enqueuePos.get();
+            }
+        } finally {
+            publishing.decrementAndGet(stripe);
+        }
+    }
+
+    private static int publishingStripe() {
+        long id = Thread.currentThread().getId();
+        // 线程id通常是连续的，混合后取低位
+        return ((int) (id ^ (id >>> 7) ^ (id >>> 17)) & (PUBLISHING_STRIPES - 1)) * PUBLISHING_PADDING;
+    }
+
+    /**
+     * 同一个生产者的加1和减1在同一个条带上，每个条带都不会小于其中正在写入的生产者数；
+     * 在running设为false之后读到的和为0时，没有通过检查还未写完的生产者
+     */
+    private long publishingCount() {
+        long sum = 0;
+        for (int i = 0; i < PUBLISHING_STRIPES; i++) {
+            sum += publishing.get(i * PUBLISHING_PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * 取出并分发一个事件
+     *
+     * @return 缓冲区为空时返回false
+     */
+    private boolean consumeOne() {
+        long pos = dequeuePos.get();
+        for (; ; ) {
+            Slot slot = slots[(int) (pos & mask)];
+            long dif = slot.sequence - (pos + 1);
+            if (dif == 0) {
+                if (dequeuePos.compareAndSet(pos, pos + 1)) {
+                    try {
+                        slot.dispatch();
+                    } catch (Throwable e) {
+                        Util.report("MyLogger async dispatch failed", e);
+                    } finally {
+                        slot.clear();
+                        slot.sequence = pos + mask + 1;
+                    }
+                    return true;
+                }
+            } else if (dif < 0) {
+                if (pos == enqueuePos.get()) {
+                    return false;
+                }
+                // 生产者已占位但还未写完，稍后再读
+                Thread.yield();
+            }
+            pos = dequeuePos.get();
+        }
+    }
+
+    private int backOff(int idle) {
+        if (idle < SPIN_TRIES) {
+            return idle + 1;
+        }
+        if (idle < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+            return idle + 1;
+        }
+        LockSupport.parkNanos(SLEEP_NANOS);
+        return idle;
+    }
+
+    private int waitForEvents(int idle) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                return idle;
+            case YIELDING:
+                if (idle < SPIN_TRIES) {
+                    return idle + 1;
+                }
+                Thread.yield();
+                return idle;
+            case SLEEPING:
+                return backOff(idle);
+            default:
+                if (idle < SPIN_TRIES) {
+                    return idle + 1;
+                }
+                lock.lock();
+                try {
+                    blockedConsumers++;
+                    if (running && enqueuePos.get() == dequeuePos.get()) {
+                        notEmpty.awaitNanos(BLOCKING_TIMEOUT_NANOS);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    blockedConsumers--;
+                    lock.unlock();
+                }
+                return 0;
+        }
+    }
+
+    private void signalConsumers() {
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private final class ConsumerThread extends Thread {
+        ConsumerThread(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            for (; ; ) {
+                if (consumeOne()) {
+                    idle = 0;
+                } else if (!running) {
+                    if (enqueuePos.get() == dequeuePos.get()) {
+                        return;
+                    }
+                } else {
+                    idle = waitForEvents(idle);
+                }
+            }
+        }
+    }
+
+    /**
+     * 预分配的事件，sequence为Vyukov有界队列的槽位序号
+     */
+    private final static class Slot {
+        volatile long sequence;
+        MyLogger logger;
+        Marker marker;
+        int level;
+        String format;
+        int argCount;
+        Object arg1;
+        Object arg2;
+        Object[] argArray;
+        Throwable throwable;
+        int primitiveTypes;
+        long prim1;
+        long prim2;
+        String threadPrefix;
+        StackTraceElement caller;
+        LogContext context;
+        Map<String, String> mdc;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+
+        void set(MyLogger logger, Marker marker, int level, String format, int argCount,
+                 Object arg1, Object arg2, Object[] argArray, Throwable t,
+                 int primitiveTypes, long prim1, long prim2,
+                 String threadPrefix, StackTraceElement caller, LogContext context, Map<String, String> mdc) {
+            this.logger = logger;
+            this.marker = marker;
+            this.level = level;
+            this.format = format;
+            this.argCount = argCount;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+            this.argArray = argArray;
+            this.throwable = t;
+            this.primitiveTypes = primitiveTypes;
+            this.prim1 = prim1;
+            this.prim2 = prim2;
+            this.threadPrefix = threadPrefix;
+            this.caller = caller;
+            this.context = context;
+            this.mdc = mdc;
+        }
+
+        /**
+         * 分发期间把记录日志时的{@link LogContext}和MDC设为当前线程的，之后恢复
+         * (shutdown时剩余事件可能在调用shutdown的线程中处理)
+         */
+        void dispatch() {
+            LogContext previous = LogContext.swap(context);
+            Map<String, String> previousMdc = null;
+            LogContext previousMirrored = null;
+            if (mdc != null) {
+                previousMdc = MDC.getCopyOfContextMap();
+                MDC.setContextMap(mdc);
+                // 复制的MDC中不一定有当前上下文，syncMdc时重新放入全部key
+                previousMirrored = LogContext.swapMirrored(LogContext.EMPTY);
+            }
+            try {
+                logger.dispatch(marker, level, format, argCount, arg1, arg2, argArray, throwable,
+                        primitiveTypes, prim1, prim2, threadPrefix, caller);
+            } finally {
+                LogContext.swap(previous);
+                if (mdc != null) {
+                    if (previousMdc == null) {
+                        MDC.clear();
+                    } else {
+                        MDC.setContextMap(previousMdc);
+                    }
+                    LogContext.swapMirrored(previousMirrored);
+                }
+            }
+        }
+
+        void clear() {
+            set(null, null, 0, null, 0, null, null, null, null, 0, 0L, 0L, null, null, null, null);
+        }
+    }
+}
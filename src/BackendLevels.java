@@ -0,0 +1,136 @@
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.Util;
+
+import java.lang.reflect.Method;
+
+/**
+ * 通过反射读写后端logger的级别，支持log4j 1.x和logback；classpath中都没有时什么也不做。
+ * logger名为"root"时表示root logger，级别对象用{@link #toLevel(int)}取得
+ */
+final class BackendLevels {
+    private final static String ROOT = "root";
+
+    private final static Method log4jGetLogger;
+    private final static Method log4jGetRootLogger;
+    private final static Method log4jGetLevel;
+    private final static Method log4jSetLevel;
+    private final static Method log4jToLevel;
+    private final static Class<?> logbackLoggerClass;
+    private final static Method logbackGetLevel;
+    private final static Method logbackSetLevel;
+    private final static Method logbackToLevel;
+
+    static {
+        Method getLogger = null;
+        Method getRootLogger = null;
+        Method getLevel = null;
+        Method setLevel = null;
+        Method toLevel = null;
+        try {
+            Class<?> loggerClass = Class.forName("org.apache.log4j.Logger");
+            Class<?> levelClass = Class.forName("org.apache.log4j.Level");
+            getLogger = loggerClass.getMethod("getLogger", String.class);
+            getRootLogger = loggerClass.getMethod("getRootLogger");
+            getLevel = loggerClass.getMethod("getLevel");
+            setLevel = loggerClass.getMethod("setLevel", levelClass);
+            toLevel = levelClass.getMethod("toLevel", String.class);
+        } catch (Exception e) {
+            getLogger = null;
+        }
+        log4jGetLogger = getLogger;
+        log4jGetRootLogger = getRootLogger;
+        log4jGetLevel = getLevel;
+        log4jSetLevel = setLevel;
+        log4jToLevel = toLevel;
+
+        Class<?> loggerClass = null;
+        getLevel = null;
+        setLevel = null;
+        toLevel = null;
+        try {
+            loggerClass = Class.forName("ch.qos.logback.classic.Logger");
+            Class<?> levelClass = Class.forName("ch.qos.logback.classic.Level");
+            getLevel = loggerClass.getMethod("getLevel");
+            setLevel = loggerClass.getMethod("setLevel", levelClass);
+            toLevel = levelClass.getMethod("toLevel", String.class);
+        } catch (Exception e) {
+            loggerClass = null;
+        }
+        logbackLoggerClass = loggerClass;
+        logbackGetLevel = getLevel;
+        logbackSetLevel = setLevel;
+        logbackToLevel = toLevel;
+    }
+
+    private BackendLevels() {
+    }
+
+    /**
+     * @return 后端的级别对象，不支持的后端返回null
+     */
+    static Object toLevel(int level) {
+        try {
+            if (log4jGetLogger != null) {
+                return log4jToLevel.invoke(null, LogConfig.levelName(level));
+            }
+            if (logbackLoggerClass != null) {
+                return logbackToLevel.invoke(null, LogConfig.levelName(level));
+            }
+        } catch (Exception e) {
+            Util.report("MyLogger: failed to convert level " + LogConfig.levelName(level), e);
+        }
+        return null;
+    }
+
+    /**
+     * @return logger上直接设置的级别，没有设置(从上级继承)或不支持的后端返回null
+     */
+    static Object get(String loggerName) {
+        try {
+            if (log4jGetLogger != null) {
+                return log4jGetLevel.invoke(log4jLogger(loggerName));
+            }
+            Object logger = logbackLogger(loggerName);
+            if (logger != null) {
+                return logbackGetLevel.invoke(logger);
+            }
+        } catch (Exception e) {
+            Util.report("MyLogger: failed to read level of " + loggerName, e);
+        }
+        return null;
+    }
+
+    /**
+     * @param level {@link #toLevel(int)}或{@link #get(String)}的结果；null表示从上级继承，root logger不能为null
+     */
+    static void set(String loggerName, Object level) {
+        try {
+            if (log4jGetLogger != null) {
+                log4jSetLevel.invoke(log4jLogger(loggerName), level);
+                return;
+            }
+            Object logger = logbackLogger(loggerName);
+            if (logger != null) {
+                logbackSetLevel.invoke(logger, level);
+            }
+        } catch (Exception e) {
+            Util.report("MyLogger: failed to set level of " + loggerName, e);
+        }
+    }
+
+    private static Object log4jLogger(String loggerName) throws Exception {
+        return ROOT.equals(loggerName) ? log4jGetRootLogger.invoke(null) : log4jGetLogger.invoke(null, loggerName);
+    }
+
+    /**
+     * @return slf4j绑定的不是logback时返回null
+     */
+    private static Object logbackLogger(String loggerName) {
+        if (logbackLoggerClass == null) {
+            return null;
+        }
+        Object logger = LoggerFactory.getLogger(ROOT.equals(loggerName) ? org.slf4j.Logger.ROOT_LOGGER_NAME
+                : loggerName);
+        return logbackLoggerClass.isInstance(logger) ? logger : null;
+    }
+}
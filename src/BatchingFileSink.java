@@ -0,0 +1,329 @@
+import org.slf4j.helpers.Util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 成组提交的{@link LogSink}：调用线程把格式化好的日志复制进当前的direct ByteBuffer，
+ * 缓冲区写满或最早的一条等待超过maxDelayMillis时交给写线程，写线程把积压的所有缓冲区用一次gathering write写入文件，
+ * 可选每批调用一次force()
+ * <p>
+ * 缓冲区个数固定，写线程跟不上时调用线程等待空闲的缓冲区。行格式见{@link LogLineFormat}
+ * </p>
+ */
+public final class BatchingFileSink implements LogSink {
+    private final static int BUFFER_COUNT = 4;
+
+    private final FileChannel channel;
+    private final String name;
+    private final int batchBytes;
+    private final long maxDelayNanos;
+    private final boolean forceEachBatch;
+    private final boolean includeLocation;
+    private final Thread writer;
+    /**
+     * 以下字段只在持有this锁时访问
+     */
+    private final ArrayDeque<Batch> free = new ArrayDeque<>();
+    private final ArrayDeque<Batch> full = new ArrayDeque<>();
+    private Batch current;
+    private long sealedCount = 0;
+    private long writtenCount = 0;
+    private boolean closed = false;
+
+    private final LogLinearHistogram batchEvents = new LogLinearHistogram();
+    private final LogLinearHistogram batchSizes = new LogLinearHistogram();
+    private final LogLinearHistogram flushNanos = new LogLinearHistogram();
+
+    /**
+     * @param batchBytes     每个缓冲区的字节数，写满即提交
+     * @param maxDelayMillis 缓冲区中最早的一条日志最多等待的时间
+     * @param forceEachBatch 每批写入后调用FileChannel.force(false)
+     */
+    public BatchingFileSink(Path file, int batchBytes, long maxDelayMillis, boolean forceEachBatch,
+                            boolean includeLocation) throws IOException {
+        if (batchBytes < 1 || maxDelayMillis < 1) {
+            throw new IllegalArgumentException("batchBytes: " + batchBytes + ", maxDelayMillis: " + maxDelayMillis);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.name = file.getFileName().toString();
+        this.batchBytes = batchBytes;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.forceEachBatch = forceEachBatch;
+        this.includeLocation = includeLocation;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            free.add(new Batch(ByteBuffer.allocateDirect(batchBytes)));
+        }
+        this.current = free.poll();
+        this.writer = new Thread("MyLogger-batch-" + name) {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public boolean isIncludeLocation() {
+        return includeLocation;
+    }
+
+    @Override
+    public void write(String loggerName, int level, long timeMillis, String threadPrefix, StackTraceElement caller,
+                      String format, int argCount, Object arg1, Object arg2, Object[] argArray, Throwable throwable,
+                      int primitiveTypes, long prim1, long prim2) {
+        LogLineFormat.LineEncoder encoder = LogLineFormat.acquireEncoder();
+        try {
+            int length = encoder.encode(loggerName, level, timeMillis, threadPrefix, caller, format, argCount,
+                    arg1, arg2, argArray, throwable, primitiveTypes, prim1, prim2);
+            append(encoder.bytes(), length, 1);
+        } finally {
+            encoder.release();
+        }
+    }
+
+    /**
+     * 整批编码后一次复制进缓冲区
+     */
+    @Override
+    public void writeBatch(String loggerName, String threadPrefix, StackTraceElement caller, LogBatch batch) {
+        LogLineFormat.LineEncoder encoder = LogLineFormat.acquireEncoder();
+        try {
+            int length = encoder.encodeBatch(loggerName, threadPrefix, caller, batch);
+            append(encoder.bytes(), length, batch.size());
+        } finally {
+            encoder.release();
+        }
+    }
+
+    /**
+     * @param events bytes中包含的日志条数
+     */
+    private synchronized void append(byte[] bytes, int length, int events) {
+        if (closed || !awaitCurrent()) {
+            return;
+        }
+        if (length > current.buffer.remaining()) {
+            if (current.events > 0) {
+                seal();
+                if (!awaitCurrent()) {
+                    return;
+                }
+            }
+            if (length > batchBytes) {
+                // 比缓冲区还大的日志单独作为一批
+                Batch oversized = new Batch(ByteBuffer.wrap(Arrays.copyOf(bytes, length)));
+                oversized.buffer.position(length);
+                oversized.events = events;
+                oversized.pooled = false;
+                full.add(oversized);
+                sealedCount++;
+                notifyAll();
+                return;
+            }
+        }
+        if (current.events == 0) {
+            current.firstEventNanos = System.nanoTime();
+        }
+        current.buffer.put(bytes, 0, length);
+        current.events += events;
+        if (!current.buffer.hasRemaining()) {
+            // 下一次append时再等待空闲的缓冲区
+            seal();
+        }
+    }
+
+    /**
+     * 把当前缓冲区交给写线程，调用时需持有this锁
+     */
+    private void seal() {
+        full.add(current);
+        current = free.poll();
+        sealedCount++;
+        notifyAll();
+    }
+
+    /**
+     * 没有空闲的缓冲区时等待写线程归还，调用时需持有this锁
+     *
+     * @return false：等待期间被关闭或中断
+     */
+    private boolean awaitCurrent() {
+        while (current == null) {
+            if (closed) {
+                return false;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (current == null) {
+                current = free.poll();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 提交当前缓冲区并等待之前的所有日志写入文件
+     */
+    @Override
+    public synchronized void flush() {
+        if (current != null && current.events > 0) {
+            seal();
+        }
+        long target = sealedCount;
+        while (writtenCount < target && writer.isAlive()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (current == null) {
+            current = free.poll();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            flush();
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            Util.report("MyLogger: failed to close " + name, e);
+        }
+    }
+
+    private void runWriter() {
+        for (; ; ) {
+            Batch[] batches;
+            synchronized (this) {
+                for (; ; ) {
+                    if (!full.isEmpty()) {
+                        break;
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    long waitNanos = maxDelayNanos;
+                    if (current != null && current.events > 0) {
+                        long age = System.nanoTime() - current.firstEventNanos;
+                        if (age >= maxDelayNanos) {
+                            seal();
+                            break;
+                        }
+                        waitNanos = maxDelayNanos - age;
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                batches = full.toArray(new Batch[0]);
+                full.clear();
+            }
+            writeBatches(batches);
+            synchronized (this) {
+                for (Batch batch : batches) {
+                    if (batch.pooled) {
+                        batch.buffer.clear();
+                        batch.events = 0;
+                        free.add(batch);
+                    }
+                }
+                if (current == null) {
+                    current = free.poll();
+                }
+                writtenCount += batches.length;
+                notifyAll();
+            }
+        }
+    }
+
+    private void writeBatches(Batch[] batches) {
+        ByteBuffer[] buffers = new ByteBuffer[batches.length];
+        long bytes = 0;
+        int events = 0;
+        for (int i = 0; i < batches.length; i++) {
+            buffers[i] = batches[i].buffer;
+            buffers[i].flip();
+            bytes += buffers[i].remaining();
+            events += batches[i].events;
+        }
+        long start = System.nanoTime();
+        try {
+            long remaining = bytes;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            if (forceEachBatch) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            Util.report("MyLogger: failed to write " + name, e);
+        }
+        flushNanos.record(System.nanoTime() - start);
+        batchEvents.record(events);
+        batchSizes.record(bytes);
+    }
+
+    public long getBatchCount() {
+        return flushNanos.count();
+    }
+
+    /**
+     * @return 每批(一次gathering write)日志条数的分位数
+     */
+    public long getBatchEventsPercentile(double quantile) {
+        return batchEvents.percentile(quantile);
+    }
+
+    /**
+     * @return 每批字节数的分位数
+     */
+    public long getBatchBytesPercentile(double quantile) {
+        return batchSizes.percentile(quantile);
+    }
+
+    /**
+     * @return 每批写入(含force)耗时纳秒数的分位数
+     */
+    public long getFlushNanosPercentile(double quantile) {
+        return flushNanos.percentile(quantile);
+    }
+
+    private final static class Batch {
+        final ByteBuffer buffer;
+        int events = 0;
+        long firstEventNanos;
+        boolean pooled = true;
+
+        Batch(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把{@link BinaryLogSink}写的文件还原成文本，每条日志一行，格式见{@link LogLineFormat}，
+ * 其中"[线程名 线程id]-[调用位置]-消息"与MyLogger输出到后端的文本相同
+ * <p>
+ * 命令行：java BinaryLogDecoder file...，没有参数时从标准输入读取，输出到标准输出(UTF-8)
+ * </p>
+ */
+public final class BinaryLogDecoder {
+    private final DataInputStream in;
+    private final Appendable out;
+    private final List<String> dictionary = new ArrayList<>();
+    private final StringBuilder line = new StringBuilder(256);
+    private long lastTimeMillis = 0;
+    /**
+     * 版本1的事件中没有上下文
+     */
+    private int version = BinaryLogSink.VERSION;
+
+    public BinaryLogDecoder(InputStream in, Appendable out) {
+        this.in = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 64 * 1024));
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        try {
+            if (args.length == 0) {
+                new BinaryLogDecoder(System.in, out).decode();
+            }
+            for (String file : args) {
+                try (InputStream in = new FileInputStream(file)) {
+                    new BinaryLogDecoder(in, out).decode();
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * 解码到输入结束；最后一条记录不完整(写入时进程退出)时忽略它
+     *
+     * @return 解码的日志条数
+     */
+    public long decode() throws IOException {
+        long count = 0;
+        for (; ; ) {
+            int tag = in.read();
+            if (tag < 0) {
+                return count;
+            }
+            try {
+                if (tag == BinaryLogSink.MAGIC[0]) {
+                    readHeader();
+                } else if (tag == BinaryLogSink.TAG_DICT) {
+                    int id = readVarInt();
+                    String s = readUtf8();
+                    while (dictionary.size() < id) {
+                        dictionary.add(null);
+                    }
+                    dictionary.set(id - 1, s);
+                } else if (tag == BinaryLogSink.TAG_EVENT) {
+                    readEvent();
+                    count++;
+                } else {
+                    throw new IOException("bad record tag: " + tag);
+                }
+            } catch (EOFException e) {
+                return count;
+            }
+        }
+    }
+
+    private void readHeader() throws IOException {
+        for (int i = 1; i < BinaryLogSink.MAGIC.length; i++) {
+            if (in.readUnsignedByte() != BinaryLogSink.MAGIC[i]) {
+                throw new IOException("not a binary log");
+            }
+        }
+        int v = in.readUnsignedByte();
+        if (v < 1 || v > BinaryLogSink.VERSION) {
+            throw new IOException("unsupported binary log version: " + v);
+        }
+        version = v;
+        dictionary.clear();
+        lastTimeMillis = 0;
+    }
+
+    private void readEvent() throws IOException {
+        long timeMillis = lastTimeMillis + unzigzag(readVarLong());
+        lastTimeMillis = timeMillis;
+        int level = in.readUnsignedByte();
+        String loggerName = readStringRef();
+        String threadPrefix = readStringRef();
+        String caller = readStringRef();
+        String[] context = new String[version >= 2 ? readVarInt() * 2 : 0];
+        for (int i = 0; i < context.length; i += 2) {
+            context[i] = readStringRef();
+            context[i + 1] = readUtf8();
+        }
+        String format = readStringRef();
+        int n = readVarInt();
+        Object[] args = null;
+        if (n > 0) {
+            args = new Object[n - 1];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = readArg();
+            }
+        }
+        String throwable = readStringRef();
+
+        line.setLength(0);
+        LogLineFormat.appendHeader(line, timeMillis, level, loggerName, threadPrefix, caller);
+        if (context.length > 0) {
+            LogLineFormat.appendContext(line, context);
+            line.append(' ');
+        }
+        if (args == null) {
+            line.append(format);
+        } else {
+            LogFormatter.formatTo(line, format, LogFormatter.ARG_ARRAY, null, null, args, null, 0, 0L, 0L);
+        }
+        line.append(LogLineFormat.LINE_SEPARATOR);
+        if (throwable != null) {
+            line.append(throwable);
+        }
+        out.append(line);
+    }
+
+    private Object readArg() throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case BinaryLogSink.ARG_NULL:
+                return null;
+            case BinaryLogSink.ARG_STRING:
+                return readUtf8();
+            case BinaryLogSink.ARG_LONG:
+                return unzigzag(readVarLong());
+            case BinaryLogSink.ARG_DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case BinaryLogSink.ARG_TRUE:
+                return Boolean.TRUE;
+            case BinaryLogSink.ARG_FALSE:
+                return Boolean.FALSE;
+            default:
+                throw new IOException("bad argument type: " + type);
+        }
+    }
+
+    private String readStringRef() throws IOException {
+        int ref = readVarInt();
+        if (ref == BinaryLogSink.STRING_NULL) {
+            return null;
+        }
+        if (ref == BinaryLogSink.STRING_INLINE) {
+            return readUtf8();
+        }
+        int id = ref >>> 1;
+        if (id > dictionary.size() || dictionary.get(id - 1) == null) {
+            throw new IOException("unknown dictionary id: " + id);
+        }
+        return dictionary.get(id - 1);
+    }
+
+    private String readUtf8() throws IOException {
+        byte[] bytes = new byte[readVarInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readVarInt() throws IOException {
+        return (int) readVarLong();
+    }
+
+    private long readVarLong() throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,318 @@
+import org.slf4j.helpers.Util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * 二进制编码的{@link LogSink}：不做{}替换和字符串拼接，只写模板id和原始参数值，用{@link BinaryLogDecoder}离线还原成文本
+ * <p>
+ * 文件格式(整数都是无符号LEB128 varint，有符号数先做zigzag)：
+ * <pre>
+ * 文件头   'M' 'Y' 'L' 'B' version           追加写入时每次打开都写一个文件头，解码时遇到文件头重置字典
+ * 字典     TAG_DICT id len utf8              模板、logger名、线程、调用位置在第一次使用前写入一次
+ * 事件     TAG_EVENT zigzag(时间差ms) level logger线程 调用位置 上下文 模板 n 参数... 异常
+ * 上下文   键值对个数 (key字符串 len utf8)...   写入时的{@link LogContext}，key进入字典，值直接写在事件中
+ * 字符串   0：null；(id &lt;&lt; 1) | 1：字典中的字符串；2：后面跟着len utf8
+ * n        0：模板原样输出不做替换；否则参数个数+1
+ * 参数     ARG_NULL | ARG_STRING len utf8 | ARG_LONG zigzag | ARG_DOUBLE 8字节 | ARG_TRUE | ARG_FALSE
+ * </pre>
+ * 没有参数的日志(如info(msg))内容可能是拼接出来的，不进入字典；字典满了以后新的字符串也直接写在事件中
+ * </p>
+ */
+public final class BinaryLogSink implements LogSink {
+    final static byte[] MAGIC = {'M', 'Y', 'L', 'B'};
+    final static int VERSION = 2;
+    final static int TAG_DICT = 1;
+    final static int TAG_EVENT = 2;
+    final static int STRING_NULL = 0;
+    final static int STRING_INLINE = 2;
+    final static int ARG_NULL = 0;
+    final static int ARG_STRING = 1;
+    final static int ARG_LONG = 2;
+    final static int ARG_DOUBLE = 3;
+    final static int ARG_TRUE = 4;
+    final static int ARG_FALSE = 5;
+    private final static int DEFAULT_MAX_DICTIONARY_SIZE = 65536;
+
+    private final OutputStream out;
+    private final boolean includeLocation;
+    private final int maxDictionarySize;
+    /**
+     * 以下字段只在持有this锁时访问
+     */
+    private final HashMap<String, Integer> dictionary = new HashMap<>();
+    private final HashMap<StackTraceElement, Integer> callers = new HashMap<>();
+    /**
+     * 本条事件新加入字典的项，写入失败时从字典中删除
+     */
+    private final ArrayList<String> pendingStrings = new ArrayList<>();
+    private final ArrayList<StackTraceElement> pendingCallers = new ArrayList<>();
+    private final StringBuilder text = new StringBuilder(256);
+    private byte[] buf = new byte[1024];
+    private int pos = 0;
+    private long lastTimeMillis = 0;
+    private boolean closed = false;
+
+    public BinaryLogSink(OutputStream out, boolean includeLocation, int maxDictionarySize) throws IOException {
+        this.out = out;
+        this.includeLocation = includeLocation;
+        this.maxDictionarySize = maxDictionarySize;
+        out.write(MAGIC);
+        out.write(VERSION);
+    }
+
+    /**
+     * 以追加方式打开文件
+     */
+    public static BinaryLogSink open(Path file, boolean includeLocation) throws IOException {
+        OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return new BinaryLogSink(new BufferedOutputStream(out, 64 * 1024), includeLocation,
+                DEFAULT_MAX_DICTIONARY_SIZE);
+    }
+
+    @Override
+    public boolean isIncludeLocation() {
+        return includeLocation;
+    }
+
+    @Override
+    public synchronized void write(String loggerName, int level, long timeMillis, String threadPrefix,
+                                   StackTraceElement caller, String format, int argCount, Object arg1, Object arg2,
+                                   Object[] argArray, Throwable throwable, int primitiveTypes, long prim1, long prim2) {
+        if (closed) {
+            return;
+        }
+        pos = 0;
+        pendingStrings.clear();
+        pendingCallers.clear();
+        long previousTimeMillis = lastTimeMillis;
+        // 先写新出现的字典项，事件中只引用id
+        int loggerRef = intern(loggerName);
+        int threadRef = intern(threadPrefix);
+        int callerRef = internCaller(caller);
+        String[] context = LogContext.current().entries();
+        int[] contextKeyRefs = context.length == 0 ? null : new int[context.length / 2];
+        for (int i = 0; i < context.length; i += 2) {
+            contextKeyRefs[i >> 1] = intern(context[i]);
+        }
+        boolean raw = argCount == 0 || (argCount == LogFormatter.ARG_ARRAY && argArray == null);
+        int templateRef = raw ? STRING_INLINE : intern(format);
+
+        writeByte(TAG_EVENT);
+        writeVarLong(zigzag(timeMillis - lastTimeMillis));
+        lastTimeMillis = timeMillis;
+        writeByte(level);
+        writeStringRef(loggerRef, loggerName);
+        writeStringRef(threadRef, threadPrefix);
+        writeVarInt(callerRef);
+        writeVarInt(context.length / 2);
+        for (int i = 0; i < context.length; i += 2) {
+            writeStringRef(contextKeyRefs[i >> 1], context[i]);
+            writeUtf8(context[i + 1]);
+        }
+        writeStringRef(format == null ? STRING_NULL : templateRef, format);
+        if (raw) {
+            writeVarInt(0);
+        } else {
+            int count = argCount == LogFormatter.ARG_ARRAY ? argArray.length : argCount;
+            if (throwable != null) {
+                count--;
+            }
+            writeVarInt(count + 1);
+            for (int i = 0; i < count; i++) {
+                if (argCount == LogFormatter.ARG_ARRAY) {
+                    writeArg(argArray[i]);
+                } else {
+                    int type = (primitiveTypes >>> (i << 1)) & 3;
+                    long prim = i == 0 ? prim1 : prim2;
+                    if (type == LogFormatter.ARG_LONG) {
+                        writeByte(ARG_LONG);
+                        writeVarLong(zigzag(prim));
+                    } else if (type == LogFormatter.ARG_DOUBLE) {
+                        writeByte(ARG_DOUBLE);
+                        writeLong(prim);
+                    } else {
+                        writeArg(i == 0 ? arg1 : arg2);
+                    }
+                }
+            }
+        }
+        if (throwable == null) {
+            writeVarInt(STRING_NULL);
+        } else {
+            writeStringRef(STRING_INLINE, StackTraceRenderer.FULL.render(throwable));
+        }
+        try {
+            out.write(buf, 0, pos);
+        } catch (IOException e) {
+            // 字典项没有写出去，之后的事件不能再引用这些id
+            for (String str : pendingStrings) {
+                dictionary.remove(str);
+            }
+            for (StackTraceElement element : pendingCallers) {
+                callers.remove(element);
+            }
+            lastTimeMillis = previousTimeMillis;
+            Util.report("MyLogger: failed to write binary log", e);
+        }
+    }
+
+    /**
+     * 整批只加一次锁
+     */
+    @Override
+    public synchronized void writeBatch(String loggerName, String threadPrefix, StackTraceElement caller,
+                                        LogBatch batch) {
+        LogSink.super.writeBatch(loggerName, threadPrefix, caller, batch);
+    }
+
+    @Override
+    public synchronized void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            Util.report("MyLogger: failed to flush binary log", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            Util.report("MyLogger: failed to close binary log", e);
+        }
+    }
+
+    /**
+     * @return 字符串引用：null为{@link #STRING_NULL}，字典满时为{@link #STRING_INLINE}
+     */
+    private int intern(String s) {
+        if (s == null) {
+            return STRING_NULL;
+        }
+        Integer id = dictionary.get(s);
+        if (id == null) {
+            if (dictionary.size() >= maxDictionarySize) {
+                return STRING_INLINE;
+            }
+            id = dictionary.size() + 1;
+            dictionary.put(s, id);
+            pendingStrings.add(s);
+            writeDict(id, s);
+        }
+        return (id << 1) | 1;
+    }
+
+    /**
+     * 调用位置以StackTraceElement为key，只在第一次出现时生成文本
+     */
+    private int internCaller(StackTraceElement caller) {
+        if (caller == null) {
+            return STRING_NULL;
+        }
+        Integer ref = callers.get(caller);
+        if (ref == null) {
+            text.setLength(0);
+            MyLogger.appendCaller(text, caller);
+            ref = intern(text.toString());
+            if (ref == STRING_INLINE) {
+                // 字典已满，不记录调用位置
+                return STRING_NULL;
+            }
+            callers.put(caller, ref);
+            pendingCallers.add(caller);
+        }
+        return ref;
+    }
+
+    private void writeDict(int id, String s) {
+        writeByte(TAG_DICT);
+        writeVarInt(id);
+        writeUtf8(s);
+    }
+
+    private void writeStringRef(int ref, String s) {
+        writeVarInt(ref);
+        if (ref == STRING_INLINE) {
+            writeUtf8(s);
+        }
+    }
+
+    private void writeArg(Object o) {
+        if (o == null) {
+            writeByte(ARG_NULL);
+        } else if (o instanceof String) {
+            writeByte(ARG_STRING);
+            writeUtf8((String) o);
+        } else if (o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Byte) {
+            writeByte(ARG_LONG);
+            writeVarLong(zigzag(((Number) o).longValue()));
+        } else if (o instanceof Double) {
+            writeByte(ARG_DOUBLE);
+            writeLong(Double.doubleToRawLongBits((Double) o));
+        } else if (o instanceof Boolean) {
+            writeByte((Boolean) o ? ARG_TRUE : ARG_FALSE);
+        } else {
+            // 其他类型按{}替换的规则转成文本，解码时得到相同的输出
+            text.setLength(0);
+            LogFormatter.appendArgument(text, o);
+            writeByte(ARG_STRING);
+            writeUtf8(text);
+        }
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (pos + extra > buf.length) {
+            byte[] bigger = new byte[Math.max(buf.length * 2, pos + extra)];
+            System.arraycopy(buf, 0, bigger, 0, pos);
+            buf = bigger;
+        }
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        buf[pos++] = (byte) b;
+    }
+
+    private void writeVarInt(int v) {
+        writeVarLong(v & 0xFFFFFFFFL);
+    }
+
+    private void writeVarLong(long v) {
+        ensureCapacity(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+    }
+
+    private void writeLong(long v) {
+        ensureCapacity(8);
+        for (int i = 56; i >= 0; i -= 8) {
+            buf[pos++] = (byte) (v >>> i);
+        }
+    }
+
+    private void writeUtf8(CharSequence s) {
+        int utf8Length = Utf8.encodedLength(s);
+        writeVarInt(utf8Length);
+        ensureCapacity(utf8Length);
+        pos = Utf8.encode(s, buf, pos);
+    }
+}
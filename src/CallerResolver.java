@@ -0,0 +1,201 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * 查找调用者：取调用栈中boundary类的栈帧之后的第一个栈帧
+ * <p>
+ * JDK9+使用StackWalker，只遍历需要的栈帧，不创建Throwable；
+ * JDK8使用sun.misc.SharedSecrets逐帧读取；都不可用时退回Thread.getStackTrace()
+ * </p>
+ */
+final class CallerResolver {
+    private final static MethodHandle STACK_WALKER_WALK;
+    private final static MethodHandle FRAME_GET_CLASS_NAME;
+    private final static MethodHandle FRAME_TO_STACK_TRACE_ELEMENT;
+    private final static MethodHandle JLA_GET_STACK_TRACE_DEPTH;
+    private final static MethodHandle JLA_GET_STACK_TRACE_ELEMENT;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodHandle walk = null;
+        MethodHandle getClassName = null;
+        MethodHandle toStackTraceElement = null;
+        try {
+            Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+            Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+            Object walker = walkerClass.getMethod("getInstance").invoke(null);
+            walk = lookup.findVirtual(walkerClass, "walk", MethodType.methodType(Object.class, Function.class))
+                    .bindTo(walker)
+                    .asType(MethodType.methodType(Object.class, Function.class));
+            getClassName = lookup.findVirtual(frameClass, "getClassName", MethodType.methodType(String.class))
+                    .asType(MethodType.methodType(String.class, Object.class));
+            toStackTraceElement = lookup.findVirtual(frameClass, "toStackTraceElement",
+                    MethodType.methodType(StackTraceElement.class))
+                    .asType(MethodType.methodType(StackTraceElement.class, Object.class));
+        } catch (Throwable e) {
+            walk = null;
+            getClassName = null;
+            toStackTraceElement = null;
+        }
+        STACK_WALKER_WALK = walk;
+        FRAME_GET_CLASS_NAME = getClassName;
+        FRAME_TO_STACK_TRACE_ELEMENT = toStackTraceElement;
+
+        MethodHandle depth = null;
+        MethodHandle element = null;
+        if (walk == null) {
+            try {
+                Class<?> sharedSecrets = Class.forName("sun.misc.SharedSecrets");
+                Object jla = sharedSecrets.getMethod("getJavaLangAccess").invoke(null);
+                Class<?> jlaClass = Class.forName("sun.misc.JavaLangAccess");
+                depth = lookup.findVirtual(jlaClass, "getStackTraceDepth", MethodType.methodType(int.class, Throwable.class))
+                        .bindTo(jla);
+                element = lookup.findVirtual(jlaClass, "getStackTraceElement",
+                        MethodType.methodType(StackTraceElement.class, Throwable.class, int.class))
+                        .bindTo(jla);
+            } catch (Throwable e) {
+                depth = null;
+                element = null;
+            }
+        }
+        JLA_GET_STACK_TRACE_DEPTH = depth;
+        JLA_GET_STACK_TRACE_ELEMENT = element;
+    }
+
+    private final String[] boundaryClassNames;
+    private final Function<Stream<Object>, Object> frameFinder;
+
+    /**
+     * @param boundary : 调用者之前的最后一个类，如LogUtil
+     */
+    CallerResolver(Class<?> boundary) {
+        this(boundary.getName());
+    }
+
+    /**
+     * @param boundaryClassNames : 调用者之前可能出现的类，如MyLogger和它的fqcn
+     */
+    CallerResolver(String... boundaryClassNames) {
+        this.boundaryClassNames = boundaryClassNames;
+        this.frameFinder = new Function<Stream<Object>, Object>() {
+            @Override
+            public Object apply(Stream<Object> frames) {
+                Iterator<Object> it = frames.iterator();
+                boolean boundarySeen = false;
+                while (it.hasNext()) {
+                    Object frame = it.next();
+                    if (isBoundary(frameClassName(frame))) {
+                        boundarySeen = true;
+                    } else if (boundarySeen) {
+                        return frame;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    private boolean isBoundary(String className) {
+        for (String boundary : boundaryClassNames) {
+            if (boundary.equals(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String frameClassName(Object frame) {
+        try {
+            return (String) FRAME_GET_CLASS_NAME.invokeExact(frame);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return 调用者类名，找不到时返回第一个boundary类名
+     */
+    String getCallerClassName() {
+        if (STACK_WALKER_WALK != null) {
+            Object frame = walkStack();
+            if (frame != null) {
+                return frameClassName(frame);
+            }
+        } else {
+            StackTraceElement ele = findFrame();
+            if (ele != null) {
+                return ele.getClassName();
+            }
+        }
+        return boundaryClassNames[0];
+    }
+
+    /**
+     * @return 调用者的栈帧，找不到时返回null
+     */
+    StackTraceElement getCallerFrame() {
+        if (STACK_WALKER_WALK != null) {
+            Object frame = walkStack();
+            if (frame == null) {
+                return null;
+            }
+            try {
+                return (StackTraceElement) FRAME_TO_STACK_TRACE_ELEMENT.invokeExact(frame);
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+        return findFrame();
+    }
+
+    private Object walkStack() {
+        try {
+            return STACK_WALKER_WALK.invokeExact(frameFinder);
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    private StackTraceElement findFrame() {
+        if (JLA_GET_STACK_TRACE_ELEMENT != null) {
+            try {
+                return scanThrowable();
+            } catch (Throwable e) {
+                // 退回Thread.getStackTrace()
+            }
+        }
+        return scanStackTrace();
+    }
+
+    private StackTraceElement scanThrowable() throws Throwable {
+        Throwable t = new Throwable();
+        int depth = (int) JLA_GET_STACK_TRACE_DEPTH.invokeExact(t);
+        boolean boundarySeen = false;
+        for (int i = 0; i < depth; i++) {
+            StackTraceElement ele = (StackTraceElement) JLA_GET_STACK_TRACE_ELEMENT.invokeExact(t, i);
+            if (isBoundary(ele.getClassName())) {
+                boundarySeen = true;
+            } else if (boundarySeen) {
+                return ele;
+            }
+        }
+        return null;
+    }
+
+    private StackTraceElement scanStackTrace() {
+        StackTraceElement[] stacks = Thread.currentThread().getStackTrace();
+        boolean boundarySeen = false;
+        for (StackTraceElement ele : stacks) {
+            if (isBoundary(ele.getClassName())) {
+                boundarySeen = true;
+            } else if (boundarySeen) {
+                return ele;
+            }
+        }
+        return null;
+    }
+}
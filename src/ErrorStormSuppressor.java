@@ -0,0 +1,212 @@
+import org.slf4j.Logger;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 异常风暴抑制：按(异常类, message模板, 栈顶若干帧)归类，每个时间窗口内同类异常只完整输出前threshold次，
+ * 其余只计数，窗口结束时输出一行"suppressed N identical errors"汇总
+ * <p>
+ * 系统属性：mylogger.errorStorm.enabled(默认false，需要显式开启)、mylogger.errorStorm.windowMillis(默认10000)、
+ * mylogger.errorStorm.threshold(默认1)、mylogger.errorStorm.topFrames(默认3)、mylogger.errorStorm.maxEntries(默认1000)
+ * </p>
+ */
+final class ErrorStormSuppressor {
+    private final long windowMillis;
+    private final int threshold;
+    private final int topFrames;
+    private final int maxEntries;
+    private final ConcurrentHashMap<Signature, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean sweeperStarted = false;
+
+    ErrorStormSuppressor(long windowMillis, int threshold, int topFrames, int maxEntries) {
+        this.windowMillis = windowMillis;
+        this.threshold = threshold;
+        this.topFrames = topFrames;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return 未开启时返回null
+     */
+    static ErrorStormSuppressor fromSystemProperties() {
+        if (!Boolean.parseBoolean(System.getProperty("mylogger.errorStorm.enabled", "false"))) {
+            return null;
+        }
+        return new ErrorStormSuppressor(
+                Long.getLong("mylogger.errorStorm.windowMillis", 10000L),
+                Integer.getInteger("mylogger.errorStorm.threshold", 1),
+                Integer.getInteger("mylogger.errorStorm.topFrames", 3),
+                Integer.getInteger("mylogger.errorStorm.maxEntries", 1000));
+    }
+
+    /**
+     * @return true：应完整输出；false：已被抑制并计数
+     */
+    boolean tryAcquire(Logger logger, Throwable e) {
+        if (e == null) {
+            return true;
+        }
+        Signature key = new Signature(e, topFrames);
+        Entry entry = entries.get(key);
+        long now = System.currentTimeMillis();
+        if (entry == null) {
+            if (entries.size() >= maxEntries) {
+                return true;
+            }
+            Entry created = new Entry(logger, e, now);
+            entry = entries.putIfAbsent(key, created);
+            if (entry == null) {
+                entry = created;
+            }
+            startSweeper();
+        }
+        if (now - entry.windowStart.get() >= windowMillis) {
+            entry.roll(now, windowMillis);
+        }
+        // 风暴中绝大多数调用在这里只读logged，被抑制的计数只累加到LongAdder，线程之间不竞争同一个计数
+        if (entry.logged.get() < threshold && entry.logged.incrementAndGet() <= threshold) {
+            return true;
+        }
+        entry.suppressed.increment();
+        return false;
+    }
+
+    private void startSweeper() {
+        if (sweeperStarted) {
+            return;
+        }
+        synchronized (this) {
+            if (sweeperStarted) {
+                return;
+            }
+            Thread sweeper = new Thread("MyLogger-errorStorm-sweeper") {
+                @Override
+                public void run() {
+                    for (; ; ) {
+                        try {
+                            Thread.sleep(windowMillis);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        sweep(System.currentTimeMillis());
+                    }
+                }
+            };
+            sweeper.setDaemon(true);
+            sweeper.start();
+            sweeperStarted = true;
+        }
+    }
+
+    /**
+     * 输出已结束窗口的汇总，清理长时间没有出现的异常
+     */
+    void sweep(long now) {
+        Iterator<Map.Entry<Signature, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            long windowStart = entry.windowStart.get();
+            if (now - windowStart < windowMillis) {
+                continue;
+            }
+            if (entry.suppressed.sum() > 0) {
+                entry.roll(now, windowMillis);
+            } else if (now - windowStart >= 2 * windowMillis) {
+                it.remove();
+            }
+        }
+    }
+
+    private final static class Entry {
+        final Logger logger;
+        final String description;
+        final AtomicLong windowStart;
+        final AtomicInteger logged = new AtomicInteger();
+        final LongAdder suppressed = new LongAdder();
+
+        Entry(Logger logger, Throwable e, long now) {
+            this.logger = logger;
+            this.description = e.toString();
+            this.windowStart = new AtomicLong(now);
+        }
+
+        /**
+         * 开始新窗口，只有一个线程能成功，由它输出上一个窗口的汇总
+         */
+        void roll(long now, long windowMillis) {
+            long start = windowStart.get();
+            if (now - start < windowMillis || !windowStart.compareAndSet(start, now)) {
+                return;
+            }
+            logged.set(0);
+            long count = suppressed.sumThenReset();
+            if (count > 0) {
+                logger.error("suppressed {} identical errors in the last {} ms: {}", count, now - start, description);
+            }
+        }
+    }
+
+    /**
+     * 归类的依据：异常类、message中连续数字替换为#后的模板、栈顶topFrames帧；hash相同时逐项比较
+     */
+    private final static class Signature {
+        final String className;
+        final String template;
+        final StackTraceElement[] frames;
+        final int hash;
+
+        Signature(Throwable e, int topFrames) {
+            this.className = e.getClass().getName();
+            this.template = template(e.getMessage());
+            StackTraceElement[] trace = e.getStackTrace();
+            this.frames = Arrays.copyOf(trace, Math.min(topFrames, trace.length));
+            this.hash = (31 * className.hashCode() + Objects.hashCode(template)) * 31 + Arrays.hashCode(frames);
+        }
+
+        private static String template(String message) {
+            if (message == null) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder(message.length());
+            boolean inDigits = false;
+            for (int i = 0; i < message.length(); i++) {
+                char c = message.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    if (!inDigits) {
+                        sb.append('#');
+                        inDigits = true;
+                    }
+                } else {
+                    sb.append(c);
+                    inDigits = false;
+                }
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Signature)) {
+                return false;
+            }
+            Signature other = (Signature) o;
+            return hash == other.hash && className.equals(other.className)
+                    && Objects.equals(template, other.template) && Arrays.equals(frames, other.frames);
+        }
+    }
+}
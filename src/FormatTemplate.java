@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 预先解析的格式串：{}占位符之间的文本(已处理转义)依次保存，格式化时直接交替追加文本和参数，不再查找{}
+ * <p>
+ * 解析结果缓存在按identityHashCode直接映射的固定大小数组中，以String对象本身为key，不调用equals/hashCode。
+ * 格式串第二次出现时才解析并放入缓存，只出现一次的动态格式串(如拼接出来的字符串)只占一个候选槽位，
+ * 不会被解析；冲突时新的模板直接覆盖旧的，缓存大小不会增长。大小由-Dmylogger.formatCache.size设置(取2的幂)，0表示不缓存
+ * </p>
+ * <p>
+ * 输出与{@link LogFormatter}逐字符查找的结果相同：参数用完后剩余的部分原样输出(其中的\{}不做转义)，
+ * 参数多于占位符时剩余部分的\{}输出为{}
+ * </p>
+ */
+final class FormatTemplate {
+    private final static int DEFAULT_CACHE_SIZE = 1024;
+    private final static String DELIM_STR = "{}";
+    private final static char ESCAPE_CHAR = '\\';
+
+    private final static int mask;
+    private final static FormatTemplate[] templates;
+    /**
+     * 第一次出现、还没有解析的格式串
+     */
+    private final static String[] candidates;
+    private final static LongAdder hits = new LongAdder();
+    private final static LongAdder misses = new LongAdder();
+    private final static LongAdder evictions = new LongAdder();
+
+    static {
+        int size = Integer.getInteger("mylogger.formatCache.size", DEFAULT_CACHE_SIZE);
+        if (size > 0) {
+            size = Integer.highestOneBit(Math.min(size, 1 << 20) * 2 - 1);
+            templates = new FormatTemplate[size];
+            candidates = new String[size];
+            mask = size - 1;
+        } else {
+            templates = null;
+            candidates = null;
+            mask = 0;
+        }
+    }
+
+    private final String pattern;
+    /**
+     * segments[k]为第k个占位符之前(上一个占位符之后)的文本
+     */
+    private final String[] segments;
+    /**
+     * ends[k]为第k个占位符之后在pattern中的位置
+     */
+    private final int[] ends;
+    /**
+     * 最后一个占位符之后的文本，已处理转义
+     */
+    private final String escapedTail;
+
+    private FormatTemplate(String pattern, String[] segments, int[] ends, String escapedTail) {
+        this.pattern = pattern;
+        this.segments = segments;
+        this.ends = ends;
+        this.escapedTail = escapedTail;
+    }
+
+    /**
+     * @return 缓存中的模板；第一次出现、缓存冲突或关闭缓存时返回null，调用方直接逐字符格式化
+     */
+    static FormatTemplate lookup(String pattern) {
+        if (templates == null) {
+            return null;
+        }
+        int index = System.identityHashCode(pattern) & mask;
+        FormatTemplate template = templates[index];
+        if (template != null && template.pattern == pattern) {
+            hits.increment();
+            return template;
+        }
+        misses.increment();
+        if (candidates[index] != pattern) {
+            candidates[index] = pattern;
+            return null;
+        }
+        // 第二次出现：解析并替换该槽位原来的模板
+        candidates[index] = null;
+        if (template != null) {
+            evictions.increment();
+        }
+        template = compile(pattern);
+        // 字段都是final，其他线程读到引用时能看到完整的模板
+        templates[index] = template;
+        return template;
+    }
+
+    static FormatTemplate compile(String pattern) {
+        List<String> segments = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        StringBuilder segment = new StringBuilder();
+        int i = 0;
+        for (; ; ) {
+            int j = pattern.indexOf(DELIM_STR, i);
+            if (j == -1) {
+                break;
+            }
+            if (j > 0 && pattern.charAt(j - 1) == ESCAPE_CHAR) {
+                if (j >= 2 && pattern.charAt(j - 2) == ESCAPE_CHAR) {
+                    // "\\{}"：输出"\"加参数
+                    segment.append(pattern, i, j - 1);
+                } else {
+                    // "\{}"：输出"{"，从"}"继续查找
+                    segment.append(pattern, i, j - 1).append('{');
+                    i = j + 1;
+                    continue;
+                }
+            } else {
+                segment.append(pattern, i, j);
+            }
+            segments.add(segment.toString());
+            segment.setLength(0);
+            i = j + 2;
+            ends.add(i);
+        }
+        segment.append(pattern, i, pattern.length());
+        int[] endArray = new int[ends.size()];
+        for (int k = 0; k < endArray.length; k++) {
+            endArray[k] = ends.get(k);
+        }
+        return new FormatTemplate(pattern, segments.toArray(new String[0]), endArray, segment.toString());
+    }
+
+    /**
+     * @param count 参与替换的参数个数(已去掉作为异常的最后一个参数)，其他参数同{@link LogFormatter#formatTo}
+     */
+    void formatTo(StringBuilder out, int count, int argCount, Object arg1, Object arg2, Object[] argArray,
+                  int primitiveTypes, long prim1, long prim2) {
+        int slots = segments.length;
+        int used = Math.min(count, slots);
+        for (int k = 0; k < used; k++) {
+            out.append(segments[k]);
+            LogFormatter.appendArg(out, k, argCount, arg1, arg2, argArray, primitiveTypes, prim1, prim2);
+        }
+        if (count > slots) {
+            out.append(escapedTail);
+        } else {
+            out.append(pattern, used == 0 ? 0 : ends[used - 1], pattern.length());
+        }
+    }
+
+    static long getHitCount() {
+        return hits.sum();
+    }
+
+    static long getMissCount() {
+        return misses.sum();
+    }
+
+    static long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return 命中次数/查找次数，还没有查找过时返回0
+     */
+    static double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+}
@@ -0,0 +1,187 @@
+import org.slf4j.MDC;
+
+import java.util.Arrays;
+
+/**
+ * 结构化日志：MyLogger.kvInfo().kv("orderId", id).kv("ms", 12L).log("placed")
+ * <p>
+ * 级别未开启时kvXxx()返回{@link #NOOP}，后续调用什么也不做；开启时返回当前线程复用的实例。
+ * slf4j 1.7没有key-value接口，键值对在调用后端期间放入MDC，输出后恢复原来的值；输出到{@link LogSink}时
+ * 键值对加到当前的{@link LogContext}中，由sink写入。
+ * 所以结构化日志总是在调用线程同步输出，不经过{@link AsyncLogDispatcher}
+ * </p>
+ * <p>
+ * 实例在log(...)之前属于当前线程，不要保存或跨线程传递；没有调用log(...)就丢弃是安全的，下一次kvXxx()会换一个实例
+ * </p>
+ */
+public final class KeyValueEvent {
+    public final static KeyValueEvent NOOP = new KeyValueEvent(true);
+    private final static int INITIAL_CAPACITY = 8;
+    private final static ThreadLocal<KeyValueEvent> pooled = new ThreadLocal<KeyValueEvent>() {
+        @Override
+        protected KeyValueEvent initialValue() {
+            return new KeyValueEvent(false);
+        }
+    };
+
+    private final boolean noop;
+    private MyLogger logger;
+    private int level;
+    private Throwable cause;
+    private boolean inUse = false;
+    private int size = 0;
+    private String[] keys;
+    private String[] values;
+    private String[] previous;
+
+    private KeyValueEvent(boolean noop) {
+        this.noop = noop;
+        if (!noop) {
+            keys = new String[INITIAL_CAPACITY];
+            values = new String[INITIAL_CAPACITY];
+            previous = new String[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * 取当前线程的实例；上一个实例还没有log(...)时新建一个并让它成为当前线程的实例。
+     * 没有调用log(...)就丢弃的实例(如kv的参数抛出异常)因此不会让当前线程一直无法复用，
+     * 嵌套使用(如在kv的参数中又记录了结构化日志)时外层的实例在log(...)后不再复用
+     */
+    static KeyValueEvent acquire(MyLogger logger, int level) {
+        KeyValueEvent event = pooled.get();
+        if (event.inUse) {
+            event = new KeyValueEvent(false);
+            pooled.set(event);
+        }
+        event.inUse = true;
+        event.logger = logger;
+        event.level = level;
+        return event;
+    }
+
+    public KeyValueEvent kv(String key, Object value) {
+        if (noop) {
+            return this;
+        }
+        return add(key, String.valueOf(value));
+    }
+
+    public KeyValueEvent kv(String key, long value) {
+        if (noop) {
+            return this;
+        }
+        return add(key, Long.toString(value));
+    }
+
+    public KeyValueEvent kv(String key, double value) {
+        if (noop) {
+            return this;
+        }
+        return add(key, Double.toString(value));
+    }
+
+    public KeyValueEvent kv(String key, boolean value) {
+        if (noop) {
+            return this;
+        }
+        return add(key, value ? "true" : "false");
+    }
+
+    public KeyValueEvent cause(Throwable t) {
+        if (noop) {
+            return this;
+        }
+        this.cause = t;
+        return this;
+    }
+
+    public void log(String msg) {
+        if (noop) {
+            return;
+        }
+        logger.logKeyValues(this, level, msg, 0, null, null, null);
+    }
+
+    public void log(String format, Object arg) {
+        if (noop) {
+            return;
+        }
+        logger.logKeyValues(this, level, format, 1, arg, null, null);
+    }
+
+    public void log(String format, Object arg1, Object arg2) {
+        if (noop) {
+            return;
+        }
+        logger.logKeyValues(this, level, format, 2, arg1, arg2, null);
+    }
+
+    public void log(String format, Object... arguments) {
+        if (noop) {
+            return;
+        }
+        logger.logKeyValues(this, level, format, LogFormatter.ARG_ARRAY, null, null, arguments);
+    }
+
+    Throwable getCause() {
+        return cause;
+    }
+
+    private KeyValueEvent add(String key, String value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            previous = Arrays.copyOf(previous, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        return this;
+    }
+
+    /**
+     * @return 在base上依次加入本实例的键值对，同一个key以最后一次为准
+     */
+    LogContext addTo(LogContext base) {
+        LogContext context = base;
+        for (int i = 0; i < size; i++) {
+            context = context.with(keys[i], values[i]);
+        }
+        return context;
+    }
+
+    /**
+     * 调用后端之前放入MDC，记下原来的值
+     */
+    void pushToMdc() {
+        for (int i = 0; i < size; i++) {
+            previous[i] = MDC.get(keys[i]);
+            MDC.put(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * 按相反的顺序恢复MDC(同一个key出现多次时恢复到最早的值)，然后清空本实例供下次使用
+     */
+    void popFromMdc() {
+        for (int i = size - 1; i >= 0; i--) {
+            if (previous[i] == null) {
+                MDC.remove(keys[i]);
+            } else {
+                MDC.put(keys[i], previous[i]);
+            }
+        }
+        release();
+    }
+
+    void release() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        Arrays.fill(previous, 0, size, null);
+        size = 0;
+        logger = null;
+        cause = null;
+        inUse = false;
+    }
+}
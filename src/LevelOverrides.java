@@ -0,0 +1,288 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 运行时的级别覆盖(如临时为某个包打开DEBUG)，优先于{@link LogConfig}和后端的级别
+ * <p>
+ * 覆盖项按logger名前缀组织成不可变的前缀树，每次修改整体重建后通过一次volatile赋值发布，
+ * 再调用{@link MyLogger#refreshLevels()}让各logger缓存的级别失效；所以没有覆盖时日志调用的开销不变，
+ * 每个logger只在版本号变化后查一次前缀树
+ * </p>
+ * <p>
+ * 可以设置过期时间，到期后由后台线程删除并再次使缓存失效
+ * </p>
+ * <p>
+ * 后端(log4j 1.x、logback)在log(...)中还会按自己的级别过滤，所以覆盖的级别同时设置到后端对应的logger上，
+ * 删除或过期后恢复为设置覆盖之前的级别(若期间后端的级别被其他途径修改则不恢复)。其他后端的级别无法修改，
+ * 比后端级别更详细的覆盖只对MyLogger的级别判断生效，日志仍会被后端丢弃
+ * </p>
+ */
+public final class LevelOverrides implements LevelOverridesMBean {
+    public final static String OBJECT_NAME = "mylogger:type=LevelOverrides";
+    private final static String ROOT = "root";
+    final static LevelOverrides INSTANCE = new LevelOverrides();
+
+    /**
+     * 前缀 -> 覆盖项，只在持有LevelOverrides.class锁时修改
+     */
+    private final static Map<String, Entry> overrides = new HashMap<>();
+    private static volatile Node trie = null;
+    /**
+     * 前缀 -> 设置覆盖之前后端logger上的级别(可能为null)，只在持有LevelOverrides.class锁时修改
+     */
+    private final static Map<String, Object> savedBackendLevels = new HashMap<>();
+    /**
+     * 前缀 -> 设置到后端的覆盖级别，恢复前用来判断后端的级别是否被其他途径修改过
+     */
+    private final static Map<String, Object> appliedBackendLevels = new HashMap<>();
+    private static Thread expiryThread = null;
+
+    private LevelOverrides() {
+    }
+
+    /**
+     * @param level          LocationAwareLogger.XXX_INT或{@link LogConfig#LEVEL_OFF}
+     * @param durationMillis 大于0时到期后自动删除
+     */
+    public static synchronized void setOverride(String loggerNamePrefix, int level, long durationMillis) {
+        long expiresAt = durationMillis > 0 ? System.currentTimeMillis() + durationMillis : 0L;
+        overrides.put(normalize(loggerNamePrefix), new Entry(level, expiresAt));
+        publish();
+        if (expiresAt > 0) {
+            startExpiryThread();
+            LevelOverrides.class.notifyAll();
+        }
+    }
+
+    public static synchronized void removeOverride(String loggerNamePrefix) {
+        if (overrides.remove(normalize(loggerNamePrefix)) != null) {
+            publish();
+        }
+    }
+
+    public static synchronized void clear() {
+        if (!overrides.isEmpty()) {
+            overrides.clear();
+            publish();
+        }
+    }
+
+    /**
+     * MyLogger在级别缓存失效后调用，沿logger名逐段向下查找最长的匹配前缀
+     *
+     * @return 没有覆盖时返回{@link LogConfig#LEVEL_NOT_SET}
+     */
+    static int resolve(String loggerName) {
+        Node node = trie;
+        if (node == null) {
+            return LogConfig.LEVEL_NOT_SET;
+        }
+        long now = System.currentTimeMillis();
+        int level = node.levelAt(now);
+        int start = 0;
+        while (start <= loggerName.length()) {
+            int dot = loggerName.indexOf('.', start);
+            int end = dot < 0 ? loggerName.length() : dot;
+            node = node.children.get(loggerName.substring(start, end));
+            if (node == null) {
+                break;
+            }
+            int nodeLevel = node.levelAt(now);
+            if (nodeLevel != LogConfig.LEVEL_NOT_SET) {
+                level = nodeLevel;
+            }
+            start = end + 1;
+        }
+        return level;
+    }
+
+    private static String normalize(String loggerNamePrefix) {
+        if (loggerNamePrefix == null) {
+            return ROOT;
+        }
+        String prefix = loggerNamePrefix.trim();
+        while (prefix.endsWith(".")) {
+            prefix = prefix.substring(0, prefix.length() - 1);
+        }
+        return prefix.isEmpty() ? ROOT : prefix;
+    }
+
+    /**
+     * 用当前的覆盖项重建前缀树并发布，调用时需持有LevelOverrides.class锁
+     */
+    private static void publish() {
+        if (overrides.isEmpty()) {
+            trie = null;
+        } else {
+            Node root = new Node();
+            for (Map.Entry<String, Entry> entry : overrides.entrySet()) {
+                Node node = root;
+                if (!ROOT.equals(entry.getKey())) {
+                    for (String segment : entry.getKey().split("\\.")) {
+                        Node child = node.children.get(segment);
+                        if (child == null) {
+                            child = new Node();
+                            node.children.put(segment, child);
+                        }
+                        node = child;
+                    }
+                }
+                node.entry = entry.getValue();
+            }
+            trie = root;
+        }
+        applyToBackend();
+        MyLogger.refreshLevels();
+    }
+
+    /**
+     * 把覆盖的级别设置到后端，恢复已删除的覆盖项原来的级别，调用时需持有LevelOverrides.class锁
+     */
+    private static void applyToBackend() {
+        for (Iterator<Map.Entry<String, Object>> it = savedBackendLevels.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Object> saved = it.next();
+            if (overrides.containsKey(saved.getKey())) {
+                continue;
+            }
+            it.remove();
+            Object current = BackendLevels.get(saved.getKey());
+            Object applied = appliedBackendLevels.remove(saved.getKey());
+            if (current == null ? applied == null : current.equals(applied)) {
+                BackendLevels.set(saved.getKey(), saved.getValue());
+            }
+        }
+        for (Map.Entry<String, Entry> entry : overrides.entrySet()) {
+            String prefix = entry.getKey();
+            Object level = BackendLevels.toLevel(entry.getValue().level);
+            if (level == null) {
+                // 不支持的后端
+                return;
+            }
+            if (!savedBackendLevels.containsKey(prefix)) {
+                savedBackendLevels.put(prefix, BackendLevels.get(prefix));
+            }
+            BackendLevels.set(prefix, level);
+            appliedBackendLevels.put(prefix, level);
+        }
+    }
+
+    private static void startExpiryThread() {
+        if (expiryThread != null) {
+            return;
+        }
+        expiryThread = new Thread("MyLogger-level-overrides-expiry") {
+            @Override
+            public void run() {
+                synchronized (LevelOverrides.class) {
+                    for (; ; ) {
+                        long now = System.currentTimeMillis();
+                        long next = Long.MAX_VALUE;
+                        boolean expired = false;
+                        for (Iterator<Entry> it = overrides.values().iterator(); it.hasNext(); ) {
+                            long expiresAt = it.next().expiresAt;
+                            if (expiresAt == 0) {
+                                continue;
+                            }
+                            if (expiresAt <= now) {
+                                it.remove();
+                                expired = true;
+                            } else {
+                                next = Math.min(next, expiresAt);
+                            }
+                        }
+                        if (expired) {
+                            publish();
+                        }
+                        try {
+                            // 没有待过期的覆盖项时等待setOverride唤醒
+                            LevelOverrides.class.wait(next == Long.MAX_VALUE ? 0L : next - now);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }
+        };
+        expiryThread.setDaemon(true);
+        expiryThread.start();
+    }
+
+    @Override
+    public void setLevel(String loggerNamePrefix, String level) {
+        setOverride(loggerNamePrefix, LogConfig.parseLevel(level.trim()), 0L);
+    }
+
+    @Override
+    public void setLevelWithExpiry(String loggerNamePrefix, String level, long expireSeconds) {
+        setOverride(loggerNamePrefix, LogConfig.parseLevel(level.trim()), TimeUnit.SECONDS.toMillis(expireSeconds));
+    }
+
+    @Override
+    public void removeLevel(String loggerNamePrefix) {
+        removeOverride(loggerNamePrefix);
+    }
+
+    @Override
+    public void removeAll() {
+        clear();
+    }
+
+    @Override
+    public String[] getOverrides() {
+        Map<String, Entry> copy;
+        synchronized (LevelOverrides.class) {
+            copy = new TreeMap<>(overrides);
+        }
+        long now = System.currentTimeMillis();
+        List<String> result = new ArrayList<>(copy.size());
+        for (Map.Entry<String, Entry> entry : copy.entrySet()) {
+            Entry override = entry.getValue();
+            String item = entry.getKey() + "=" + LogConfig.levelName(override.level);
+            if (override.expiresAt > 0) {
+                item += " (expires in " + Math.max(0L, (override.expiresAt - now) / 1000) + "s)";
+            }
+            result.add(item);
+        }
+        return result.toArray(new String[0]);
+    }
+
+    @Override
+    public String getOverrideFor(String loggerName) {
+        int level = resolve(loggerName);
+        return level == LogConfig.LEVEL_NOT_SET ? null : LogConfig.levelName(level);
+    }
+
+    private final static class Entry {
+        final int level;
+        /**
+         * 0表示不过期
+         */
+        final long expiresAt;
+
+        Entry(int level, long expiresAt) {
+            this.level = level;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 前缀树节点，发布后不再修改
+     */
+    private final static class Node {
+        final Map<String, Node> children = new HashMap<>(4);
+        Entry entry;
+
+        int levelAt(long now) {
+            Entry o = entry;
+            if (o == null || (o.expiresAt != 0 && o.expiresAt <= now)) {
+                return LogConfig.LEVEL_NOT_SET;
+            }
+            return o.level;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * {@link LevelOverrides}的JMX接口，注册为mylogger:type=LevelOverrides
+ */
+public interface LevelOverridesMBean {
+    /**
+     * @param loggerNamePrefix logger名或包名，"root"表示所有logger
+     * @param level            TRACE、DEBUG、INFO、WARN、ERROR或OFF
+     */
+    void setLevel(String loggerNamePrefix, String level);
+
+    /**
+     * 同{@link #setLevel(String, String)}，expireSeconds秒后自动删除
+     */
+    void setLevelWithExpiry(String loggerNamePrefix, String level, long expireSeconds);
+
+    void removeLevel(String loggerNamePrefix);
+
+    void removeAll();
+
+    /**
+     * @return 每项为"前缀=级别"，有过期时间的附加"(expires in Ns)"
+     */
+    String[] getOverrides();
+
+    /**
+     * @return 对该logger生效的覆盖级别，没有时返回null
+     */
+    String getOverrideFor(String loggerName);
+}
@@ -0,0 +1,254 @@
+import org.slf4j.helpers.Util;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * 自动配置：从系统属性mylogger.config指定的文件(或classpath下的mylogger.properties)读取级别和选项，
+ * 生成不可变的{@link LogConfig}快照，通过一次volatile赋值发布；文件在磁盘上时用WatchService监视，修改后自动重新加载
+ * <p>
+ * classpath中有log4j时，配置的级别同时设置到log4j的Logger上
+ * </p>
+ * <p>
+ * 同时注册{@link LevelOverrides}和{@link LogMetrics}的MBean，系统属性mylogger.jmx.enabled=false时不注册
+ * </p>
+ */
+public class Log4jConfUtil {
+    private final static String DEFAULT_RESOURCE = "mylogger.properties";
+    private final static long RELOAD_DEBOUNCE_MILLIS = 100;
+
+    private static volatile LogConfig config = LogConfig.EMPTY;
+    private static boolean configured = false;
+    private static Path configFile = null;
+    private static Set<String> appliedLog4jLevels = new HashSet<>();
+    /**
+     * 第一次设置level.root之前log4j root logger的级别，配置中删除level.root后恢复
+     */
+    private static Object originalLog4jRootLevel = null;
+    private static Set<String> appliedRateLimits = new HashSet<>();
+
+    /**
+     * 只在第一次调用时加载配置并开始监视配置文件
+     */
+    public static synchronized void autoConf() {
+        if (configured) {
+            return;
+        }
+        configured = true;
+        registerMBeans();
+        String location = System.getProperty("mylogger.config");
+        if (location != null) {
+            configFile = Paths.get(location);
+        } else {
+            URL url = Log4jConfUtil.class.getClassLoader() == null ? null
+                    : Log4jConfUtil.class.getClassLoader().getResource(DEFAULT_RESOURCE);
+            if (url == null) {
+                return;
+            }
+            if ("file".equals(url.getProtocol())) {
+                try {
+                    configFile = Paths.get(url.toURI());
+                } catch (Exception e) {
+                    configFile = null;
+                }
+            }
+            if (configFile == null) {
+                // jar中的配置只加载一次，无法监视
+                try (InputStream in = url.openStream()) {
+                    Properties props = new Properties();
+                    props.load(in);
+                    publish(LogConfig.parse(props));
+                } catch (Exception e) {
+                    Util.report("MyLogger: failed to load " + url, e);
+                }
+                return;
+            }
+        }
+        reload();
+        startWatcher(configFile);
+    }
+
+    /**
+     * @return 当前的配置快照，热路径上可以直接读取
+     */
+    public static LogConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * 重新读取配置文件，解析失败时保留原来的配置
+     */
+    public static synchronized void reload() {
+        if (configFile == null) {
+            return;
+        }
+        if (!Files.isRegularFile(configFile)) {
+            Util.report("MyLogger: config file " + configFile + " not found, keeping current config");
+            return;
+        }
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(configFile)) {
+            props.load(in);
+            publish(LogConfig.parse(props));
+        } catch (Exception e) {
+            Util.report("MyLogger: failed to load " + configFile + ", keeping current config", e);
+        }
+    }
+
+    /**
+     * 发布新的快照：先应用到log4j和限流配置，再替换快照，最后让MyLogger缓存的级别失效
+     */
+    static synchronized void publish(LogConfig newConfig) {
+        applyLog4jLevels(newConfig.getLevels());
+        applyRateLimits(newConfig.getRateLimits());
+        config = newConfig;
+        MyLogger.refreshLevels();
+    }
+
+    private static void applyRateLimits(Map<String, RateLimitPolicy> rateLimits) {
+        for (String prefix : appliedRateLimits) {
+            if (!rateLimits.containsKey(prefix)) {
+                LogRateLimits.setPolicy(prefix, null);
+            }
+        }
+        for (Map.Entry<String, RateLimitPolicy> entry : rateLimits.entrySet()) {
+            LogRateLimits.setPolicy(entry.getKey(), entry.getValue());
+        }
+        appliedRateLimits = new HashSet<>(rateLimits.keySet());
+    }
+
+    /**
+     * 通过反射设置log4j 1.x的级别，classpath中没有log4j时什么也不做
+     */
+    private static void applyLog4jLevels(Map<String, Integer> levels) {
+        Method getLogger;
+        Method getRootLogger;
+        Method getLevel;
+        Method setLevel;
+        Method toLevel;
+        try {
+            Class<?> loggerClass = Class.forName("org.apache.log4j.Logger");
+            Class<?> levelClass = Class.forName("org.apache.log4j.Level");
+            getLogger = loggerClass.getMethod("getLogger", String.class);
+            getRootLogger = loggerClass.getMethod("getRootLogger");
+            getLevel = loggerClass.getMethod("getLevel");
+            setLevel = loggerClass.getMethod("setLevel", levelClass);
+            toLevel = levelClass.getMethod("toLevel", String.class);
+        } catch (Exception e) {
+            return;
+        }
+        try {
+            Object rootLogger = getRootLogger.invoke(null);
+            if (levels.containsKey("root") && !appliedLog4jLevels.contains("root")) {
+                originalLog4jRootLevel = getLevel.invoke(rootLogger);
+            }
+            for (String name : appliedLog4jLevels) {
+                if (levels.containsKey(name)) {
+                    continue;
+                }
+                if ("root".equals(name)) {
+                    // root logger的级别不能为null，恢复为原来的级别
+                    setLevel.invoke(rootLogger, originalLog4jRootLevel);
+                    originalLog4jRootLevel = null;
+                } else {
+                    setLevel.invoke(getLogger.invoke(null, name), new Object[]{null});
+                }
+            }
+            for (Map.Entry<String, Integer> entry : levels.entrySet()) {
+                Object logger = "root".equals(entry.getKey()) ? rootLogger
+                        : getLogger.invoke(null, entry.getKey());
+                setLevel.invoke(logger, toLevel.invoke(null, LogConfig.levelName(entry.getValue())));
+            }
+            appliedLog4jLevels = new HashSet<>(levels.keySet());
+        } catch (Exception e) {
+            Util.report("MyLogger: failed to apply levels to log4j", e);
+        }
+    }
+
+    private static void registerMBeans() {
+        if (!Boolean.parseBoolean(System.getProperty("mylogger.jmx.enabled", "true"))) {
+            return;
+        }
+        registerMBean(LevelOverrides.INSTANCE, LevelOverrides.OBJECT_NAME);
+        registerMBean(LogMetrics.INSTANCE, LogMetrics.OBJECT_NAME);
+    }
+
+    private static void registerMBean(Object mbean, String objectName) {
+        try {
+            ObjectName name = new ObjectName(objectName);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(mbean, name);
+            }
+        } catch (Throwable e) {
+            Util.report("MyLogger: failed to register " + objectName, e);
+        }
+    }
+
+    private static void startWatcher(final Path file) {
+        final Path dir = file.toAbsolutePath().getParent();
+        if (dir == null) {
+            return;
+        }
+        final WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            Util.report("MyLogger: cannot watch " + dir + ", config hot reload disabled", e);
+            return;
+        }
+        final Path fileName = file.getFileName();
+        Thread watcher = new Thread("MyLogger-config-watcher") {
+            @Override
+            public void run() {
+                for (; ; ) {
+                    WatchKey key;
+                    try {
+                        key = watchService.take();
+                    } catch (InterruptedException | ClosedWatchServiceException e) {
+                        return;
+                    }
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (fileName.equals(event.context()) || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            changed = true;
+                        }
+                    }
+                    if (changed) {
+                        try {
+                            // 编辑器保存时可能连续触发多次，稍等文件写完
+                            Thread.sleep(RELOAD_DEBOUNCE_MILLIS);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        reload();
+                    }
+                    if (!key.reset()) {
+                        return;
+                    }
+                }
+            }
+        };
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+}
@@ -0,0 +1,292 @@
+import org.slf4j.spi.LocationAwareLogger;
+
+import java.util.Arrays;
+
+/**
+ * 批量日志：逐条处理记录的任务把每条日志先放入缓冲区，提交时一次分发
+ * <pre>
+ * try (LogBatch batch = logger.openBatch(1000)) {
+ *     for (Order order : orders) {
+ *         batch.info("processed {}", order.getId());
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * 级别判断和限流在放入时进行；{@link #commit()}时输出到{@link LogSink}只调用一次{@link LogSink#writeBatch}，
+ * sink对整批只加一次锁、一次写入；输出到slf4j后端时仍然逐条调用(slf4j 1.7没有批量接口)，上下文相同的相邻日志只同步一次MDC。
+ * 缓冲的日志达到maxEvents条时自动提交，close()提交剩下的日志
+ * </p>
+ * <p>
+ * 批量日志总是在调用线程同步输出，不经过{@link AsyncLogDispatcher}；调用位置为提交时的调用处。
+ * 每条日志记下放入时的{@link LogContext}，输出时恢复；直接用MDC.put设置的值不会记下，取提交时的MDC。
+ * 参数在提交时才格式化(toString()在提交时调用)，提交前不要修改。实例属于当前线程并被复用，close()之后不要再使用
+ * </p>
+ */
+public final class LogBatch implements AutoCloseable {
+    public final static int DEFAULT_MAX_EVENTS = 1024;
+    private final static int INITIAL_CAPACITY = 16;
+    private final static int MAX_REUSABLE_CAPACITY = 4096;
+    private final static ThreadLocal<LogBatch> pooled = new ThreadLocal<LogBatch>() {
+        @Override
+        protected LogBatch initialValue() {
+            return new LogBatch();
+        }
+    };
+
+    private MyLogger logger;
+    private int maxEvents;
+    private boolean inUse = false;
+    private int size = 0;
+    private int[] levels = new int[INITIAL_CAPACITY];
+    private long[] times = new long[INITIAL_CAPACITY];
+    private String[] formats = new String[INITIAL_CAPACITY];
+    private int[] argCounts = new int[INITIAL_CAPACITY];
+    private Object[] args1 = new Object[INITIAL_CAPACITY];
+    private Object[] args2 = new Object[INITIAL_CAPACITY];
+    private Object[][] argArrays = new Object[INITIAL_CAPACITY][];
+    private Throwable[] throwables = new Throwable[INITIAL_CAPACITY];
+    private LogContext[] contexts = new LogContext[INITIAL_CAPACITY];
+
+    private LogBatch() {
+    }
+
+    /**
+     * 取当前线程的实例；上一个批次还没有close时新建一个
+     */
+    static LogBatch acquire(MyLogger logger, int maxEvents) {
+        if (maxEvents < 1) {
+            throw new IllegalArgumentException("maxEvents: " + maxEvents);
+        }
+        LogBatch batch = pooled.get();
+        if (batch.inUse) {
+            batch = new LogBatch();
+        }
+        batch.inUse = true;
+        batch.logger = logger;
+        batch.maxEvents = maxEvents;
+        return batch;
+    }
+
+    public void trace(String msg) {
+        add(LocationAwareLogger.TRACE_INT, msg, 0, null, null, null);
+    }
+
+    public void trace(String format, Object arg) {
+        add(LocationAwareLogger.TRACE_INT, format, 1, arg, null, null);
+    }
+
+    public void trace(String format, Object arg1, Object arg2) {
+        add(LocationAwareLogger.TRACE_INT, format, 2, arg1, arg2, null);
+    }
+
+    public void trace(String format, Object... arguments) {
+        add(LocationAwareLogger.TRACE_INT, format, LogFormatter.ARG_ARRAY, null, null, arguments);
+    }
+
+    public void debug(String msg) {
+        add(LocationAwareLogger.DEBUG_INT, msg, 0, null, null, null);
+    }
+
+    public void debug(String format, Object arg) {
+        add(LocationAwareLogger.DEBUG_INT, format, 1, arg, null, null);
+    }
+
+    public void debug(String format, Object arg1, Object arg2) {
+        add(LocationAwareLogger.DEBUG_INT, format, 2, arg1, arg2, null);
+    }
+
+    public void debug(String format, Object... arguments) {
+        add(LocationAwareLogger.DEBUG_INT, format, LogFormatter.ARG_ARRAY, null, null, arguments);
+    }
+
+    public void info(String msg) {
+        add(LocationAwareLogger.INFO_INT, msg, 0, null, null, null);
+    }
+
+    public void info(String format, Object arg) {
+        add(LocationAwareLogger.INFO_INT, format, 1, arg, null, null);
+    }
+
+    public void info(String format, Object arg1, Object arg2) {
+        add(LocationAwareLogger.INFO_INT, format, 2, arg1, arg2, null);
+    }
+
+    public void info(String format, Object... arguments) {
+        add(LocationAwareLogger.INFO_INT, format, LogFormatter.ARG_ARRAY, null, null, arguments);
+    }
+
+    public void warn(String msg) {
+        add(LocationAwareLogger.WARN_INT, msg, 0, null, null, null);
+    }
+
+    public void warn(String format, Object arg) {
+        add(LocationAwareLogger.WARN_INT, format, 1, arg, null, null);
+    }
+
+    public void warn(String format, Object arg1, Object arg2) {
+        add(LocationAwareLogger.WARN_INT, format, 2, arg1, arg2, null);
+    }
+
+    public void warn(String format, Object... arguments) {
+        add(LocationAwareLogger.WARN_INT, format, LogFormatter.ARG_ARRAY, null, null, arguments);
+    }
+
+    public void error(String msg) {
+        add(LocationAwareLogger.ERROR_INT, msg, 0, null, null, null);
+    }
+
+    public void error(String format, Object arg) {
+        add(LocationAwareLogger.ERROR_INT, format, 1, arg, null, null);
+    }
+
+    public void error(String format, Object arg1, Object arg2) {
+        add(LocationAwareLogger.ERROR_INT, format, 2, arg1, arg2, null);
+    }
+
+    public void error(String format, Object... arguments) {
+        add(LocationAwareLogger.ERROR_INT, format, LogFormatter.ARG_ARRAY, null, null, arguments);
+    }
+
+    /**
+     * @return 已缓冲、还没有提交的日志条数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 输出缓冲的日志并清空缓冲区，之后可以继续放入
+     */
+    public void commit() {
+        if (size == 0 || logger == null) {
+            return;
+        }
+        try {
+            logger.dispatchBatch(this);
+        } finally {
+            clear();
+        }
+    }
+
+    /**
+     * 提交剩下的日志，把实例还给当前线程
+     */
+    @Override
+    public void close() {
+        if (!inUse) {
+            return;
+        }
+        try {
+            commit();
+        } finally {
+            logger = null;
+            inUse = false;
+            if (levels.length > MAX_REUSABLE_CAPACITY) {
+                shrink();
+            }
+        }
+    }
+
+    private void add(int level, String format, int argCount, Object arg1, Object arg2, Object[] argArray) {
+        if (logger == null || !logger.acceptBatchEvent(level, format)) {
+            return;
+        }
+        if (size == levels.length) {
+            grow();
+        }
+        levels[size] = level;
+        times[size] = System.currentTimeMillis();
+        formats[size] = format;
+        argCounts[size] = argCount;
+        args1[size] = arg1;
+        args2[size] = arg2;
+        argArrays[size] = argArray;
+        throwables[size] = argCount == 0 ? null : LogFormatter.getThrowableCandidate(argCount, arg1, arg2, argArray);
+        contexts[size] = LogContext.current();
+        size++;
+        if (size >= maxEvents) {
+            commit();
+        }
+    }
+
+    private void grow() {
+        int capacity = levels.length * 2;
+        levels = Arrays.copyOf(levels, capacity);
+        times = Arrays.copyOf(times, capacity);
+        formats = Arrays.copyOf(formats, capacity);
+        argCounts = Arrays.copyOf(argCounts, capacity);
+        args1 = Arrays.copyOf(args1, capacity);
+        args2 = Arrays.copyOf(args2, capacity);
+        argArrays = Arrays.copyOf(argArrays, capacity);
+        throwables = Arrays.copyOf(throwables, capacity);
+        contexts = Arrays.copyOf(contexts, capacity);
+    }
+
+    private void shrink() {
+        levels = new int[INITIAL_CAPACITY];
+        times = new long[INITIAL_CAPACITY];
+        formats = new String[INITIAL_CAPACITY];
+        argCounts = new int[INITIAL_CAPACITY];
+        args1 = new Object[INITIAL_CAPACITY];
+        args2 = new Object[INITIAL_CAPACITY];
+        argArrays = new Object[INITIAL_CAPACITY][];
+        throwables = new Throwable[INITIAL_CAPACITY];
+        contexts = new LogContext[INITIAL_CAPACITY];
+    }
+
+    private void clear() {
+        Arrays.fill(formats, 0, size, null);
+        Arrays.fill(args1, 0, size, null);
+        Arrays.fill(args2, 0, size, null);
+        Arrays.fill(argArrays, 0, size, null);
+        Arrays.fill(throwables, 0, size, null);
+        Arrays.fill(contexts, 0, size, null);
+        size = 0;
+    }
+
+    int level(int i) {
+        return levels[i];
+    }
+
+    long timeMillis(int i) {
+        return times[i];
+    }
+
+    String format(int i) {
+        return formats[i];
+    }
+
+    void setFormat(int i, String format) {
+        formats[i] = format;
+    }
+
+    int argCount(int i) {
+        return argCounts[i];
+    }
+
+    Object arg1(int i) {
+        return args1[i];
+    }
+
+    Object arg2(int i) {
+        return args2[i];
+    }
+
+    Object[] argArray(int i) {
+        return argArrays[i];
+    }
+
+    /**
+     * @return 从参数中取出的异常，见{@link LogFormatter#getThrowableCandidate}
+     */
+    Throwable throwable(int i) {
+        return throwables[i];
+    }
+
+    /**
+     * @return 放入时的{@link LogContext}
+     */
+    LogContext context(int i) {
+        return contexts[i];
+    }
+}
@@ -0,0 +1,134 @@
+import org.slf4j.spi.LocationAwareLogger;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * 不可变的配置快照，由{@link Log4jConfUtil}整体替换发布，读取时不需要加锁
+ * <p>
+ * 配置文件格式：
+ * <pre>
+ * level.com.foo=DEBUG
+ * level.com.foo.bar=WARN
+ * rateLimit.com.foo.Chatty=100/s:200
+ * option.removeLine=true
+ * </pre>
+ * </p>
+ */
+public final class LogConfig {
+    /**
+     * 没有为logger配置级别
+     */
+    public final static int LEVEL_NOT_SET = Integer.MIN_VALUE;
+    public final static int LEVEL_OFF = Integer.MAX_VALUE;
+    public final static LogConfig EMPTY = new LogConfig(Collections.<String, Integer>emptyMap(),
+            Collections.<String, RateLimitPolicy>emptyMap(), false);
+
+    private final static String LEVEL_PREFIX = "level.";
+    private final static String RATE_LIMIT_PREFIX = "rateLimit.";
+    private final static String OPTION_REMOVE_LINE = "option.removeLine";
+
+    private final Map<String, Integer> levels;
+    private final Map<String, RateLimitPolicy> rateLimits;
+    private final boolean removeLine;
+
+    private LogConfig(Map<String, Integer> levels, Map<String, RateLimitPolicy> rateLimits, boolean removeLine) {
+        this.levels = levels;
+        this.rateLimits = rateLimits;
+        this.removeLine = removeLine;
+    }
+
+    /**
+     * @throws IllegalArgumentException 级别名或限流配置不正确
+     */
+    public static LogConfig parse(Properties props) {
+        Map<String, Integer> levels = new HashMap<>();
+        Map<String, RateLimitPolicy> rateLimits = new HashMap<>();
+        for (String key : props.stringPropertyNames()) {
+            String value = props.getProperty(key).trim();
+            if (key.startsWith(LEVEL_PREFIX)) {
+                levels.put(key.substring(LEVEL_PREFIX.length()), parseLevel(value));
+            } else if (key.startsWith(RATE_LIMIT_PREFIX)) {
+                rateLimits.put(key.substring(RATE_LIMIT_PREFIX.length()), RateLimitPolicy.parse(value));
+            }
+        }
+        boolean removeLine = Boolean.parseBoolean(props.getProperty(OPTION_REMOVE_LINE, "false").trim());
+        return new LogConfig(Collections.unmodifiableMap(levels), Collections.unmodifiableMap(rateLimits), removeLine);
+    }
+
+    public static int parseLevel(String name) {
+        switch (name.toUpperCase(Locale.ROOT)) {
+            case "TRACE":
+                return LocationAwareLogger.TRACE_INT;
+            case "DEBUG":
+                return LocationAwareLogger.DEBUG_INT;
+            case "INFO":
+                return LocationAwareLogger.INFO_INT;
+            case "WARN":
+                return LocationAwareLogger.WARN_INT;
+            case "ERROR":
+                return LocationAwareLogger.ERROR_INT;
+            case "OFF":
+                return LEVEL_OFF;
+            default:
+                throw new IllegalArgumentException("unknown level: " + name);
+        }
+    }
+
+    public static String levelName(int level) {
+        switch (level) {
+            case LocationAwareLogger.TRACE_INT:
+                return "TRACE";
+            case LocationAwareLogger.DEBUG_INT:
+                return "DEBUG";
+            case LocationAwareLogger.INFO_INT:
+                return "INFO";
+            case LocationAwareLogger.WARN_INT:
+                return "WARN";
+            case LocationAwareLogger.ERROR_INT:
+                return "ERROR";
+            default:
+                return "OFF";
+        }
+    }
+
+    /**
+     * 按logger名逐级向上(a.b.C、a.b、a)查找配置的级别
+     *
+     * @return 没有配置时返回{@link #LEVEL_NOT_SET}
+     */
+    public int getLevel(String loggerName) {
+        if (levels.isEmpty()) {
+            return LEVEL_NOT_SET;
+        }
+        String name = loggerName;
+        for (; ; ) {
+            Integer level = levels.get(name);
+            if (level != null) {
+                return level;
+            }
+            int dot = name.lastIndexOf('.');
+            if (dot < 0) {
+                break;
+            }
+            name = name.substring(0, dot);
+        }
+        Integer root = levels.get("root");
+        return root != null ? root : LEVEL_NOT_SET;
+    }
+
+    public Map<String, Integer> getLevels() {
+        return levels;
+    }
+
+    public Map<String, RateLimitPolicy> getRateLimits() {
+        return rateLimits;
+    }
+
+    public boolean isRemoveLine() {
+        return removeLine;
+    }
+}
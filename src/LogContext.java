@@ -0,0 +1,541 @@
+import org.slf4j.MDC;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 不可变的日志上下文，代替在线程间复制MDC：
+ * <pre>
+ * try (LogContext.Scope ignored = LogContext.put("orderId", id)) {
+ *     executor.execute(LogContext.wrapRunnable(task));  // task在线程池中运行时带着orderId
+ * }
+ * </pre>
+ * <p>
+ * with/without返回新的上下文，新节点只记录这一次修改并指向原来的上下文，原来的节点被共享而不复制；
+ * 所以取得当前上下文、交给其他线程都只是传递一个引用。修改次数远多于key数时整理成一条新的链
+ * </p>
+ * <p>
+ * MyLogger记录日志时读取当前上下文的引用：异步模式下随事件进入{@link AsyncLogDispatcher}，在消费线程中恢复；
+ * 输出到{@link LogSink}时由sink写入；输出到slf4j后端前同步到MDC，上下文没有变化时不重复写入。
+ * MDC中由上下文同步的key不要再直接用MDC修改
+ * </p>
+ */
+public final class LogContext {
+    public final static LogContext EMPTY = new LogContext(null, null, null, 0, 0);
+    private final static String[] NO_ENTRIES = new String[0];
+    private final static ThreadLocal<Holder> holders = new ThreadLocal<Holder>() {
+        @Override
+        protected Holder initialValue() {
+            return new Holder();
+        }
+    };
+
+    private final String key;
+    /**
+     * null表示删除key
+     */
+    private final String value;
+    private final LogContext parent;
+    /**
+     * 链上的节点数
+     */
+    private final int depth;
+    /**
+     * 有效的key数
+     */
+    private final int size;
+    /**
+     * 按key第一次出现的顺序展开的键值对：key0, value0, key1, value1...，第一次使用时生成
+     */
+    private volatile String[] entries;
+
+    private LogContext(String key, String value, LogContext parent, int depth, int size) {
+        this.key = key;
+        this.value = value;
+        this.parent = parent;
+        this.depth = depth;
+        this.size = size;
+        this.entries = parent == null ? NO_ENTRIES : null;
+    }
+
+    /**
+     * @return 当前线程的上下文，没有时为{@link #EMPTY}
+     */
+    public static LogContext current() {
+        return holders.get().current;
+    }
+
+    /**
+     * 在当前上下文上加一个键值对并设为当前上下文，关闭返回的Scope时恢复
+     */
+    public static Scope put(String key, String value) {
+        return current().with(key, value).attach();
+    }
+
+    /**
+     * 把本上下文设为当前线程的上下文，关闭返回的Scope时恢复原来的上下文
+     */
+    public Scope attach() {
+        return new Scope(swap(this));
+    }
+
+    /**
+     * 设置当前上下文
+     *
+     * @return 原来的上下文
+     */
+    static LogContext swap(LogContext context) {
+        Holder holder = holders.get();
+        LogContext previous = holder.current;
+        holder.current = context == null ? EMPTY : context;
+        return previous;
+    }
+
+    /**
+     * @param value null时相当于{@link #without(String)}
+     */
+    public LogContext with(String key, String value) {
+        if (key == null) {
+            throw new IllegalArgumentException("key is null");
+        }
+        if (value == null) {
+            return without(key);
+        }
+        String old = get(key);
+        if (value.equals(old)) {
+            return this;
+        }
+        return compact(new LogContext(key, value, this, depth + 1, old == null ? size + 1 : size));
+    }
+
+    public LogContext without(String key) {
+        if (key == null || get(key) == null) {
+            return this;
+        }
+        return compact(new LogContext(key, null, this, depth + 1, size - 1));
+    }
+
+    /**
+     * 修改次数远多于key数时只保留有效的键值对重建一条链
+     */
+    private static LogContext compact(LogContext context) {
+        if (context.depth <= context.size * 2 + 8) {
+            return context;
+        }
+        String[] kv = context.entries();
+        LogContext compacted = EMPTY;
+        for (int i = 0; i < kv.length; i += 2) {
+            compacted = new LogContext(kv[i], kv[i + 1], compacted, compacted.depth + 1, compacted.size + 1);
+        }
+        return compacted;
+    }
+
+    /**
+     * @return key对应的值，没有时返回null
+     */
+    public String get(String key) {
+        for (LogContext node = this; node.parent != null; node = node.parent) {
+            if (node.key.equals(key)) {
+                return node.value;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(BiConsumer<String, String> action) {
+        String[] kv = entries();
+        for (int i = 0; i < kv.length; i += 2) {
+            action.accept(kv[i], kv[i + 1]);
+        }
+    }
+
+    public Map<String, String> toMap() {
+        String[] kv = entries();
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < kv.length; i += 2) {
+            map.put(kv[i], kv[i + 1]);
+        }
+        return map;
+    }
+
+    /**
+     * @return "{key=value, key2=value2}"
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder(16 * size + 2);
+        appendTo(buf);
+        return buf.toString();
+    }
+
+    void appendTo(StringBuilder buf) {
+        LogLineFormat.appendContext(buf, entries());
+    }
+
+    /**
+     * 展开的键值对，调用方不能修改返回的数组
+     */
+    String[] entries() {
+        String[] kv = entries;
+        if (kv == null) {
+            kv = flatten();
+            entries = kv;
+        }
+        return kv;
+    }
+
+    private String[] flatten() {
+        LogContext[] nodes = new LogContext[depth];
+        int n = 0;
+        for (LogContext node = this; node.parent != null; node = node.parent) {
+            nodes[n++] = node;
+        }
+        // 按key第一次出现的顺序排列，值取最后一次修改
+        List<String> keys = new ArrayList<>(size);
+        for (int i = n - 1; i >= 0; i--) {
+            String k = nodes[i].key;
+            if (!keys.contains(k)) {
+                keys.add(k);
+            }
+        }
+        String[] kv = new String[size * 2];
+        int j = 0;
+        for (String k : keys) {
+            String v = get(k);
+            if (v != null) {
+                kv[j++] = k;
+                kv[j++] = v;
+            }
+        }
+        return kv;
+    }
+
+    /**
+     * 设置当前线程上次同步到MDC的上下文，整体替换MDC之后用来让{@link #syncMdc()}重新同步
+     *
+     * @return 原来的值
+     */
+    static LogContext swapMirrored(LogContext mirrored) {
+        Holder holder = holders.get();
+        LogContext previous = holder.mirrored;
+        holder.mirrored = mirrored;
+        return previous;
+    }
+
+    /**
+     * 把当前线程的上下文同步到MDC，上下文与上次同步的相同且MDC没有被清空时什么也不做
+     */
+    static void syncMdc() {
+        Holder holder = holders.get();
+        LogContext context = holder.current;
+        LogContext mirrored = holder.mirrored;
+        if (context == mirrored) {
+            if (context.size == 0) {
+                return;
+            }
+            // MDC中保存的是同步时放入的同一个String对象，第一个key还在就认为MDC没有被别人清空
+            String[] kv = context.entries();
+            if (MDC.get(kv[0]) == kv[1]) {
+                return;
+            }
+        }
+        String[] next = context.entries();
+        String[] old = mirrored.entries();
+        for (int i = 0; i < old.length; i += 2) {
+            if (context.get(old[i]) == null) {
+                MDC.remove(old[i]);
+            }
+        }
+        for (int i = 0; i < next.length; i += 2) {
+            if (MDC.get(next[i]) != next[i + 1]) {
+                MDC.put(next[i], next[i + 1]);
+            }
+        }
+        holder.mirrored = context;
+    }
+
+    /**
+     * 运行时使用调用wrapXxx时的上下文
+     */
+    public static Runnable wrapRunnable(final Runnable task) {
+        final LogContext captured = current();
+        return () -> {
+            LogContext previous = swap(captured);
+            try {
+                task.run();
+            } finally {
+                swap(previous);
+            }
+        };
+    }
+
+    public static <V> Callable<V> wrapCallable(final Callable<V> task) {
+        final LogContext captured = current();
+        return () -> {
+            LogContext previous = swap(captured);
+            try {
+                return task.call();
+            } finally {
+                swap(previous);
+            }
+        };
+    }
+
+    public static <T> Supplier<T> wrapSupplier(final Supplier<T> supplier) {
+        final LogContext captured = current();
+        return () -> {
+            LogContext previous = swap(captured);
+            try {
+                return supplier.get();
+            } finally {
+                swap(previous);
+            }
+        };
+    }
+
+    /**
+     * 用于CompletableFuture的thenApply等回调，回调可能在完成future的其他线程中运行
+     */
+    public static <T, R> Function<T, R> wrapFunction(final Function<T, R> function) {
+        final LogContext captured = current();
+        return t -> {
+            LogContext previous = swap(captured);
+            try {
+                return function.apply(t);
+            } finally {
+                swap(previous);
+            }
+        };
+    }
+
+    public static <T> Consumer<T> wrapConsumer(final Consumer<T> consumer) {
+        final LogContext captured = current();
+        return t -> {
+            LogContext previous = swap(captured);
+            try {
+                consumer.accept(t);
+            } finally {
+                swap(previous);
+            }
+        };
+    }
+
+    public static <T, U, R> BiFunction<T, U, R> wrapBiFunction(final BiFunction<T, U, R> function) {
+        final LogContext captured = current();
+        return (t, u) -> {
+            LogContext previous = swap(captured);
+            try {
+                return function.apply(t, u);
+            } finally {
+                swap(previous);
+            }
+        };
+    }
+
+    /**
+     * 每次execute时取调用线程的上下文
+     */
+    public static Executor wrapExecutor(final Executor executor) {
+        if (executor instanceof ContextExecutorService) {
+            return executor;
+        }
+        return task -> executor.execute(wrapRunnable(task));
+    }
+
+    /**
+     * 每次提交任务时取调用线程的上下文
+     */
+    public static ExecutorService wrapExecutorService(ExecutorService executor) {
+        if (executor instanceof ContextExecutorService) {
+            return executor;
+        }
+        return new ContextExecutorService(executor);
+    }
+
+    /**
+     * 新线程运行时使用调用newThread的线程的上下文
+     */
+    public static ThreadFactory wrapThreadFactory(final ThreadFactory factory) {
+        return task -> factory.newThread(wrapRunnable(task));
+    }
+
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(wrapSupplier(supplier), executor);
+    }
+
+    public static CompletableFuture<Void> runAsync(Runnable task, Executor executor) {
+        return CompletableFuture.runAsync(wrapRunnable(task), executor);
+    }
+
+    /**
+     * 创建虚拟线程的ThreadFactory(Java 21以上，通过反射调用Thread.ofVirtual())，线程名为namePrefix加序号
+     *
+     * @throws UnsupportedOperationException 运行时不支持虚拟线程
+     */
+    public static ThreadFactory virtualThreadFactory(String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return wrapThreadFactory((ThreadFactory) builderClass.getMethod("factory").invoke(builder));
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads are not available", e);
+        }
+    }
+
+    /**
+     * 每个任务一个虚拟线程的ExecutorService(Java 21以上)，提交任务时取调用线程的上下文
+     *
+     * @throws UnsupportedOperationException 运行时不支持虚拟线程
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return wrapExecutorService((ExecutorService) method.invoke(null));
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads are not available", e);
+        }
+    }
+
+    /**
+     * {@link #attach()}、{@link #put(String, String)}的返回值，关闭时恢复原来的上下文
+     */
+    public final static class Scope implements AutoCloseable {
+        private final LogContext previous;
+        private boolean closed = false;
+
+        private Scope(LogContext previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                swap(previous);
+            }
+        }
+    }
+
+    private final static class Holder {
+        LogContext current = EMPTY;
+        /**
+         * 上次同步到MDC的上下文
+         */
+        LogContext mirrored = EMPTY;
+    }
+
+    private final static class ContextExecutorService implements ExecutorService {
+        private final ExecutorService delegate;
+
+        ContextExecutorService(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(wrapRunnable(command));
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+
+        @Override
+        public <T> Future<T> submit(Callable<T> task) {
+            return delegate.submit(wrapCallable(task));
+        }
+
+        @Override
+        public <T> Future<T> submit(Runnable task, T result) {
+            return delegate.submit(wrapRunnable(task), result);
+        }
+
+        @Override
+        public Future<?> submit(Runnable task) {
+            return delegate.submit(wrapRunnable(task));
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+            return delegate.invokeAll(wrapAll(tasks));
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+                throws InterruptedException {
+            return delegate.invokeAll(wrapAll(tasks), timeout, unit);
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks)
+                throws InterruptedException, ExecutionException {
+            return delegate.invokeAny(wrapAll(tasks));
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            return delegate.invokeAny(wrapAll(tasks), timeout, unit);
+        }
+
+        private static <T> List<Callable<T>> wrapAll(Collection<? extends Callable<T>> tasks) {
+            if (tasks.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<Callable<T>> wrapped = new ArrayList<>(tasks.size());
+            for (Callable<T> task : tasks) {
+                wrapped.add(wrapCallable(task));
+            }
+            return wrapped;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+import org.slf4j.helpers.Util;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 替代org.slf4j.helpers.MessageFormatter：把{}替换写入每个线程复用的StringBuilder，
+ * 不创建FormattingTuple和参数数组。转义(\{}、\\{})、数组参数以及末尾Throwable参数的处理与MessageFormatter(1.7.x)一致。
+ * 重复使用的格式串由{@link FormatTemplate}预先解析
+ */
+final class LogFormatter {
+    /**
+     * argCount取此值时使用argArray
+     */
+    final static int ARG_ARRAY = -1;
+    /**
+     * primitiveTypes中每个参数占2位，表示arg1、arg2是对象还是prim1、prim2中的long/double值
+     */
+    final static int ARG_OBJECT = 0;
+    final static int ARG_LONG = 1;
+    final static int ARG_DOUBLE = 2;
+    private final static char DELIM_START = '{';
+    private final static String DELIM_STR = "{}";
+    private final static char ESCAPE_CHAR = '\\';
+    /**
+     * 超过此容量的StringBuilder不再复用，避免个别超长日志长期占用内存
+     */
+    private final static int MAX_REUSABLE_CAPACITY = 8192;
+
+    private final static ThreadLocal<BuilderHolder> builders = new ThreadLocal<BuilderHolder>() {
+        @Override
+        protected BuilderHolder initialValue() {
+            return new BuilderHolder();
+        }
+    };
+
+    private LogFormatter() {
+    }
+
+    /**
+     * 取得当前线程复用的StringBuilder(已清空)。参数的toString()中再次记录日志时返回新的StringBuilder
+     */
+    static StringBuilder acquireBuilder() {
+        BuilderHolder holder = builders.get();
+        if (holder.inUse) {
+            return new StringBuilder(256);
+        }
+        holder.inUse = true;
+        holder.builder.setLength(0);
+        return holder.builder;
+    }
+
+    static void releaseBuilder(StringBuilder builder) {
+        BuilderHolder holder = builders.get();
+        if (holder.builder != builder) {
+            return;
+        }
+        if (builder.capacity() > MAX_REUSABLE_CAPACITY) {
+            holder.builder = new StringBuilder(256);
+        }
+        holder.inUse = false;
+    }
+
+    /**
+     * 与MessageFormatter一致：最后一个参数是Throwable时作为异常输出，不参与{}替换
+     */
+    static Throwable getThrowableCandidate(int argCount, Object arg1, Object arg2, Object[] argArray) {
+        Object last;
+        if (argCount == ARG_ARRAY) {
+            if (argArray == null || argArray.length == 0) {
+                return null;
+            }
+            last = argArray[argArray.length - 1];
+        } else if (argCount == 2) {
+            last = arg2;
+        } else if (argCount == 1) {
+            last = arg1;
+        } else {
+            return null;
+        }
+        return last instanceof Throwable ? (Throwable) last : null;
+    }
+
+    /**
+     * 把pattern中的{}依次替换为参数，追加到out
+     *
+     * @param argCount       1、2：使用arg1、arg2；{@link #ARG_ARRAY}：使用argArray
+     * @param throwable      {@link #getThrowableCandidate}的结果，不为null时最后一个参数不参与替换
+     * @param primitiveTypes 见{@link #primitiveTypes(int, int)}，为0时全部是对象参数
+     */
+    static void formatTo(StringBuilder out, String pattern, int argCount, Object arg1, Object arg2,
+                         Object[] argArray, Throwable throwable, int primitiveTypes, long prim1, long prim2) {
+        if (pattern == null) {
+            out.append((String) null);
+            return;
+        }
+        int count;
+        if (argCount == ARG_ARRAY) {
+            if (argArray == null) {
+                out.append(pattern);
+                return;
+            }
+            count = argArray.length;
+        } else {
+            count = argCount;
+        }
+        if (throwable != null) {
+            count--;
+        }
+        if (count > 0) {
+            FormatTemplate template = FormatTemplate.lookup(pattern);
+            if (template != null) {
+                template.formatTo(out, count, argCount, arg1, arg2, argArray, primitiveTypes, prim1, prim2);
+                return;
+            }
+        }
+        int len = pattern.length();
+        int i = 0;
+        for (int l = 0; l < count; l++) {
+            int j = pattern.indexOf(DELIM_STR, i);
+            if (j == -1) {
+                break;
+            }
+            if (j > 0 && pattern.charAt(j - 1) == ESCAPE_CHAR) {
+                if (j >= 2 && pattern.charAt(j - 2) == ESCAPE_CHAR) {
+                    // 转义符本身被转义："\\{}"输出"\"加参数
+                    out.append(pattern, i, j - 1);
+                    appendArg(out, l, argCount, arg1, arg2, argArray, primitiveTypes, prim1, prim2);
+                    i = j + 2;
+                } else {
+                    // "\{}"原样输出"{}"，不消耗参数
+                    l--;
+                    out.append(pattern, i, j - 1);
+                    out.append(DELIM_START);
+                    i = j + 1;
+                }
+            } else {
+                out.append(pattern, i, j);
+                appendArg(out, l, argCount, arg1, arg2, argArray, primitiveTypes, prim1, prim2);
+                i = j + 2;
+            }
+        }
+        out.append(pattern, i, len);
+    }
+
+    /**
+     * @return arg1、arg2的类型编码，如primitiveTypes(ARG_OBJECT, ARG_LONG)表示arg1为对象、arg2为prim2中的long
+     */
+    static int primitiveTypes(int arg1Type, int arg2Type) {
+        return arg1Type | (arg2Type << 2);
+    }
+
+    static void appendArg(StringBuilder out, int index, int argCount, Object arg1, Object arg2,
+                                  Object[] argArray, int primitiveTypes, long prim1, long prim2) {
+        if (argCount == ARG_ARRAY) {
+            appendParameter(out, argArray[index], null);
+            return;
+        }
+        int type = (primitiveTypes >>> (index << 1)) & 3;
+        long prim = index == 0 ? prim1 : prim2;
+        if (type == ARG_LONG) {
+            out.append(prim);
+        } else if (type == ARG_DOUBLE) {
+            out.append(Double.longBitsToDouble(prim));
+        } else {
+            appendParameter(out, index == 0 ? arg1 : arg2, null);
+        }
+    }
+
+    /**
+     * 按{}替换时的规则输出单个参数(数组展开、toString()失败时输出[FAILED toString()])
+     */
+    static void appendArgument(StringBuilder out, Object o) {
+        appendParameter(out, o, null);
+    }
+
+    /**
+     * @param seen 正在输出的Object[]，用于发现自引用的数组，只在遇到Object[]时才创建
+     */
+    private static void appendParameter(StringBuilder out, Object o, Map<Object[], Object> seen) {
+        if (o == null) {
+            out.append("null");
+            return;
+        }
+        if (!o.getClass().isArray()) {
+            safeObjectAppend(out, o);
+        } else if (o instanceof boolean[]) {
+            boolean[] a = (boolean[]) o;
+            out.append('[');
+            for (int i = 0; i < a.length; i++) {
+                out.append(a[i]);
+                if (i != a.length - 1) {
+                    out.append(", ");
+                }
+            }
+            out.append(']');
+        } else if (o instanceof byte[]) {
+            byte[] a = (byte[]) o;
+            out.append('[');
+            for (int i = 0; i < a.length; i++) {
+                out.append(a[i]);
+                if (i != a.length - 1) {
+                    out.append(", ");
+                }
+            }
+            out.append(']');
+        } else if (o instanceof char[]) {
+            char[] a = (char[]) o;
+            out.append('[');
+            for (int i = 0; i < a.length; i++) {
+                out.append(a[i]);
+                if (i != a.length - 1) {
+                    out.append(", ");
+                }
+            }
+            out.append(']');
+        } else if (o instanceof short[]) {
+            short[] a = (short[]) o;
+            out.append('[');
+            for (int i = 0; i < a.length; i++) {
+                out.append(a[i]);
+                if (i != a.length - 1) {
+                    out.append(", ");
+                }
+            }
+            out.append(']');
+        } else if (o instanceof int[]) {
+            int[] a = (int[]) o;
+            out.append('[');
+            for (int i = 0; i < a.length; i++) {
+                out.append(a[i]);
+                if (i != a.length - 1) {
+                    out.append(", ");
+                }
+            }
+            out.append(']');
+        } else if (o instanceof long[]) {
+            long[] a = (long[]) o;
+            out.append('[');
+            for (int i = 0; i < a.length; i++) {
+                out.append(a[i]);
+                if (i != a.length - 1) {
+                    out.append(", ");
+                }
+            }
+            out.append(']');
+        } else if (o instanceof float[]) {
+            float[] a = (float[]) o;
+            out.append('[');
+            for (int i = 0; i < a.length; i++) {
+                out.append(a[i]);
+                if (i != a.length - 1) {
+                    out.append(", ");
+                }
+            }
+            out.append(']');
+        } else if (o instanceof double[]) {
+            double[] a = (double[]) o;
+            out.append('[');
+            for (int i = 0; i < a.length; i++) {
+                out.append(a[i]);
+                if (i != a.length - 1) {
+                    out.append(", ");
+                }
+            }
+            out.append(']');
+        } else {
+            Object[] a = (Object[]) o;
+            if (seen == null) {
+                seen = new IdentityHashMap<>();
+            }
+            out.append('[');
+            if (!seen.containsKey(a)) {
+                seen.put(a, null);
+                for (int i = 0; i < a.length; i++) {
+                    appendParameter(out, a[i], seen);
+                    if (i != a.length - 1) {
+                        out.append(", ");
+                    }
+                }
+                seen.remove(a);
+            } else {
+                out.append("...");
+            }
+            out.append(']');
+        }
+    }
+
+    private static void safeObjectAppend(StringBuilder out, Object o) {
+        try {
+            out.append(o.toString());
+        } catch (Throwable t) {
+            Util.report("SLF4J: Failed toString() invocation on an object of type [" + o.getClass().getName() + "]", t);
+            out.append("[FAILED toString()]");
+        }
+    }
+
+    private final static class BuilderHolder {
+        StringBuilder builder = new StringBuilder(256);
+        boolean inUse = false;
+    }
+}
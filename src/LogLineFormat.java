@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * 不经过slf4j后端的sink和{@link BinaryLogDecoder}共用的行格式：
+ * "yyyy-MM-dd HH:mm:ss.SSS 级别 logger名 - [线程名 线程id]-[调用位置]-{上下文} 消息"，
+ * 当前{@link LogContext}为空时没有"{上下文} "
+ */
+final class LogLineFormat {
+    final static String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final static ThreadLocal<TimeCache> timeCaches = new ThreadLocal<TimeCache>() {
+        @Override
+        protected TimeCache initialValue() {
+            return new TimeCache();
+        }
+    };
+    private final static ThreadLocal<LineEncoder> encoders = new ThreadLocal<LineEncoder>() {
+        @Override
+        protected LineEncoder initialValue() {
+            return new LineEncoder();
+        }
+    };
+
+    private LogLineFormat() {
+    }
+
+    /**
+     * 取得当前线程复用的编码器，用完后调用{@link LineEncoder#release()}。参数的toString()中再次写入sink时返回新的编码器
+     */
+    static LineEncoder acquireEncoder() {
+        LineEncoder encoder = encoders.get();
+        if (encoder.inUse) {
+            encoder = new LineEncoder();
+        }
+        encoder.inUse = true;
+        return encoder;
+    }
+
+    /**
+     * 追加消息之前的部分
+     */
+    static void appendHeader(StringBuilder line, long timeMillis, int level, String loggerName, String threadPrefix,
+                             StackTraceElement caller) {
+        appendStart(line, timeMillis, level, loggerName, threadPrefix);
+        MyLogger.appendCaller(line, caller);
+        line.append("]-");
+    }
+
+    /**
+     * @param caller 已经是"类名.方法名(行号)"格式的调用位置
+     */
+    static void appendHeader(StringBuilder line, long timeMillis, int level, String loggerName, String threadPrefix,
+                             String caller) {
+        appendStart(line, timeMillis, level, loggerName, threadPrefix);
+        if (caller != null) {
+            line.append(caller);
+        }
+        line.append("]-");
+    }
+
+    /**
+     * 追加"{key=value, key2=value2}"
+     *
+     * @param entries 见{@link LogContext#entries()}
+     */
+    static void appendContext(StringBuilder line, String[] entries) {
+        line.append('{');
+        for (int i = 0; i < entries.length; i += 2) {
+            if (i > 0) {
+                line.append(", ");
+            }
+            line.append(entries[i]).append('=').append(entries[i + 1]);
+        }
+        line.append('}');
+    }
+
+    private static void appendStart(StringBuilder line, long timeMillis, int level, String loggerName,
+                                    String threadPrefix) {
+        timeCaches.get().append(line, timeMillis);
+        line.append(' ').append(LogConfig.levelName(level)).append(' ')
+                .append(loggerName).append(" - ")
+                .append(threadPrefix).append('[');
+    }
+
+    /**
+     * 把一条日志编码成一行(有异常时加上异常栈)UTF-8文本
+     */
+    final static class LineEncoder {
+        private final static int MAX_REUSABLE_CAPACITY = 64 * 1024;
+        private final StringBuilder line = new StringBuilder(256);
+        private byte[] bytes = new byte[1024];
+        private boolean inUse = false;
+
+        /**
+         * 参数同{@link LogSink#write}
+         *
+         * @return 写入{@link #bytes()}的字节数
+         */
+        int encode(String loggerName, int level, long timeMillis, String threadPrefix, StackTraceElement caller,
+                   String format, int argCount, Object arg1, Object arg2, Object[] argArray, Throwable throwable,
+                   int primitiveTypes, long prim1, long prim2) {
+            line.setLength(0);
+            appendLine(loggerName, level, timeMillis, threadPrefix, caller, LogContext.current(), format, argCount,
+                    arg1, arg2, argArray, throwable, primitiveTypes, prim1, prim2);
+            return toBytes();
+        }
+
+        /**
+         * 把一个批次的所有日志依次编码到{@link #bytes()}，参数同{@link LogSink#writeBatch}
+         *
+         * @return 写入{@link #bytes()}的字节数
+         */
+        int encodeBatch(String loggerName, String threadPrefix, StackTraceElement caller, LogBatch batch) {
+            line.setLength(0);
+            for (int i = 0, size = batch.size(); i < size; i++) {
+                appendLine(loggerName, batch.level(i), batch.timeMillis(i), threadPrefix, caller, batch.context(i),
+                        batch.format(i), batch.argCount(i), batch.arg1(i), batch.arg2(i), batch.argArray(i),
+                        batch.throwable(i), 0, 0L, 0L);
+            }
+            return toBytes();
+        }
+
+        private void appendLine(String loggerName, int level, long timeMillis, String threadPrefix,
+                                StackTraceElement caller, LogContext context, String format, int argCount,
+                                Object arg1, Object arg2, Object[] argArray, Throwable throwable,
+                                int primitiveTypes, long prim1, long prim2) {
+            appendHeader(line, timeMillis, level, loggerName, threadPrefix, caller);
+            if (!context.isEmpty()) {
+                context.appendTo(line);
+                line.append(' ');
+            }
+            if (argCount == 0 || format == null || (argCount == LogFormatter.ARG_ARRAY && argArray == null)) {
+                line.append(format);
+            } else {
+                LogFormatter.formatTo(line, format, argCount, arg1, arg2, argArray, throwable,
+                        primitiveTypes, prim1, prim2);
+            }
+            line.append(LINE_SEPARATOR);
+            if (throwable != null) {
+                try {
+                    MyLogger.getStackTraceRenderer().render(throwable, line);
+                } catch (IOException e) {
+                    // StringBuilder不会抛出IOException
+                }
+            }
+        }
+
+        private int toBytes() {
+            int length = Utf8.encodedLength(line);
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            Utf8.encode(line, bytes, 0);
+            return length;
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+
+        void release() {
+            inUse = false;
+            if (line.capacity() > MAX_REUSABLE_CAPACITY) {
+                line.setLength(0);
+                line.trimToSize();
+            }
+            if (bytes.length > MAX_REUSABLE_CAPACITY) {
+                bytes = new byte[1024];
+            }
+        }
+    }
+
+    /**
+     * 每个线程缓存当前秒的"yyyy-MM-dd HH:mm:ss"，同一秒内只追加毫秒
+     */
+    private final static class TimeCache {
+        private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        private long second = Long.MIN_VALUE;
+        private String text;
+
+        void append(StringBuilder line, long timeMillis) {
+            long s = Math.floorDiv(timeMillis, 1000L);
+            if (s != second) {
+                second = s;
+                text = format.format(new Date(s * 1000L));
+            }
+            int millis = (int) Math.floorMod(timeMillis, 1000L);
+            line.append(text).append('.');
+            if (millis < 100) {
+                line.append('0');
+            }
+            if (millis < 10) {
+                line.append('0');
+            }
+            line.append(millis);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 固定桶的log-linear直方图，记录非负的long值(耗时纳秒数、字节数等)：小于8的值每个一个桶，
+ * 之后每个2的幂区间分8个桶，相对误差不超过12.5%，上限约2^40
+ * <p>
+ * 与LongAdder相同的思路：桶分成若干条带，线程按id选择条带，多个线程同时记录时不竞争同一组计数；
+ * 条带在第一次使用时创建，读取时把各条带相加。条带数为不小于CPU核数的2的幂，最多64
+ * </p>
+ */
+final class LogLinearHistogram {
+    private final static int SUB_BITS = 3;
+    private final static int SUB_COUNT = 1 << SUB_BITS;
+    private final static int MAX_EXPONENT = 40;
+    private final static int BUCKET_COUNT = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+    private final static int STRIPE_COUNT =
+            Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPE_COUNT);
+
+    void record(long value) {
+        long id = Thread.currentThread().getId();
+        // 线程id通常是连续的，混合后取低位
+        int index = (int) (id ^ (id >>> 7) ^ (id >>> 17)) & (STRIPE_COUNT - 1);
+        AtomicLongArray buckets = stripes.get(index);
+        if (buckets == null) {
+            stripes.compareAndSet(index, null, new AtomicLongArray(BUCKET_COUNT));
+            buckets = stripes.get(index);
+        }
+        buckets.incrementAndGet(bucketIndex(value));
+    }
+
+    /**
+     * 清零所有桶，与并发的record同时进行时个别记录可能保留
+     */
+    void reset() {
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+            AtomicLongArray buckets = stripes.get(stripe);
+            if (buckets == null) {
+                continue;
+            }
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets.set(i, 0L);
+            }
+        }
+    }
+
+    /**
+     * @return 各条带之和
+     */
+    private long[] counts() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+            AtomicLongArray buckets = stripes.get(stripe);
+            if (buckets == null) {
+                continue;
+            }
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += buckets.get(i);
+            }
+        }
+        return counts;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_COUNT) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int mantissa = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + mantissa;
+    }
+
+    /**
+     * @return 桶的上界(含)
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        long lower = (long) (SUB_COUNT + index % SUB_COUNT) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    long percentile(double quantile) {
+        long[] counts = counts();
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    long count() {
+        long total = 0;
+        for (long c : counts()) {
+            total += c;
+        }
+        return total;
+    }
+
+    long max() {
+        long[] counts = counts();
+        for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+            if (counts[i] > 0) {
+                return bucketUpperBound(i);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,267 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 日志开销统计：按logger和级别记录输出条数、格式化后的消息长度(字符数)、调用后端log(...)的耗时
+ * <p>
+ * 输出到{@link LogSink}(包括批量日志)的消息由sink自己编码(BinaryLogSink不做格式化)，只计入条数和耗时，
+ * 不计入字符数；所以字符数/条数不是平均长度
+ * </p>
+ * <p>
+ * 默认关闭，关闭时MyLogger每条日志只多读一次volatile；用系统属性mylogger.metrics.enabled=true、
+ * {@link #setEnabled(boolean)}或JMX(mylogger:type=LogMetrics)打开
+ * </p>
+ */
+public final class LogMetrics implements LogMetricsMBean {
+    public final static String OBJECT_NAME = "mylogger:type=LogMetrics";
+    final static LogMetrics INSTANCE = new LogMetrics();
+    /**
+     * 传给{@link LoggerMetrics#record}的字符数，表示消息没有在MyLogger中格式化
+     */
+    final static int NOT_FORMATTED = -1;
+    private final static String[] LEVEL_NAMES = {"TRACE", "DEBUG", "INFO", "WARN", "ERROR"};
+
+    private static volatile boolean enabled = Boolean.getBoolean("mylogger.metrics.enabled");
+    private final static ConcurrentHashMap<String, LoggerMetrics> loggers = new ConcurrentHashMap<>();
+
+    private LogMetrics() {
+    }
+
+    static boolean enabled() {
+        return enabled;
+    }
+
+    static LoggerMetrics forLogger(String loggerName) {
+        LoggerMetrics metrics = loggers.get(loggerName);
+        if (metrics == null) {
+            LoggerMetrics created = new LoggerMetrics(loggerName);
+            metrics = loggers.putIfAbsent(loggerName, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @return 所有已记录的(logger, 级别)的统计快照，不包括清零后还没有新记录的
+     */
+    public static List<Snapshot> snapshot() {
+        List<Snapshot> result = new ArrayList<>();
+        for (LoggerMetrics metrics : loggers.values()) {
+            for (int i = 0; i < LEVEL_NAMES.length; i++) {
+                LevelMetrics levelMetrics = metrics.levels.get(i);
+                if (levelMetrics != null && levelMetrics.count.sum() > 0) {
+                    result.add(levelMetrics.snapshot(metrics.loggerName, LEVEL_NAMES[i]));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return 没有记录时返回null
+     */
+    public static Snapshot snapshot(String loggerName, int level) {
+        LoggerMetrics metrics = loggers.get(loggerName);
+        LevelMetrics levelMetrics = metrics == null ? null : metrics.levels.get(levelIndex(level));
+        return levelMetrics == null ? null : levelMetrics.snapshot(loggerName, LEVEL_NAMES[levelIndex(level)]);
+    }
+
+    /**
+     * 清零所有统计，MyLogger缓存的LoggerMetrics仍然有效。只清零计数，不删除已创建的统计，
+     * 与正在进行的记录并发时个别记录可能计入清零前或清零后
+     */
+    public static void resetAll() {
+        for (LoggerMetrics metrics : loggers.values()) {
+            for (int i = 0; i < LEVEL_NAMES.length; i++) {
+                LevelMetrics levelMetrics = metrics.levels.get(i);
+                if (levelMetrics != null) {
+                    levelMetrics.reset();
+                }
+            }
+        }
+    }
+
+    private static int levelIndex(int level) {
+        return Math.max(0, Math.min(level / 10, LEVEL_NAMES.length - 1));
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        LogMetrics.enabled = enabled;
+    }
+
+    @Override
+    public long getTotalCount() {
+        long total = 0;
+        for (Snapshot snapshot : snapshot()) {
+            total += snapshot.getCount();
+        }
+        return total;
+    }
+
+    @Override
+    public long getTotalFormattedChars() {
+        long total = 0;
+        for (Snapshot snapshot : snapshot()) {
+            total += snapshot.getFormattedChars();
+        }
+        return total;
+    }
+
+    @Override
+    public String[] getSnapshot() {
+        List<Snapshot> snapshots = snapshot();
+        String[] result = new String[snapshots.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = snapshots.get(i).toString();
+        }
+        return result;
+    }
+
+    @Override
+    public long getCount(String loggerName, String level) {
+        Snapshot snapshot = snapshot(loggerName, LogConfig.parseLevel(level.trim()));
+        return snapshot == null ? 0 : snapshot.getCount();
+    }
+
+    @Override
+    public double getFormatCacheHitRate() {
+        return FormatTemplate.getHitRate();
+    }
+
+    @Override
+    public long getFormatCacheHitCount() {
+        return FormatTemplate.getHitCount();
+    }
+
+    @Override
+    public long getFormatCacheMissCount() {
+        return FormatTemplate.getMissCount();
+    }
+
+    @Override
+    public long getFormatCacheEvictionCount() {
+        return FormatTemplate.getEvictionCount();
+    }
+
+    @Override
+    public void reset() {
+        resetAll();
+    }
+
+    /**
+     * 一个logger的统计，各级别的统计在第一次输出该级别的日志时创建
+     */
+    final static class LoggerMetrics {
+        final String loggerName;
+        final AtomicReferenceArray<LevelMetrics> levels = new AtomicReferenceArray<>(LEVEL_NAMES.length);
+
+        LoggerMetrics(String loggerName) {
+            this.loggerName = loggerName;
+        }
+
+        /**
+         * @param formattedChars 为{@link #NOT_FORMATTED}时不计入字符数
+         */
+        void record(int level, int formattedChars, long nanos) {
+            int index = levelIndex(level);
+            LevelMetrics metrics = levels.get(index);
+            if (metrics == null) {
+                metrics = levels.updateAndGet(index, m -> m == null ? new LevelMetrics() : m);
+            }
+            metrics.count.increment();
+            if (formattedChars != NOT_FORMATTED) {
+                metrics.formattedChars.add(formattedChars);
+            }
+            metrics.latency.record(nanos);
+        }
+    }
+
+    private final static class LevelMetrics {
+        final LongAdder count = new LongAdder();
+        final LongAdder formattedChars = new LongAdder();
+        final LogLinearHistogram latency = new LogLinearHistogram();
+
+        void reset() {
+            count.reset();
+            formattedChars.reset();
+            latency.reset();
+        }
+
+        Snapshot snapshot(String loggerName, String level) {
+            return new Snapshot(loggerName, level, count.sum(), formattedChars.sum(),
+                    latency.percentile(0.5), latency.percentile(0.99), latency.max());
+        }
+    }
+
+    /**
+     * 某个logger某个级别的统计值，耗时为直方图桶的上界(纳秒)
+     */
+    public final static class Snapshot {
+        private final String loggerName;
+        private final String level;
+        private final long count;
+        private final long formattedChars;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+
+        Snapshot(String loggerName, String level, long count, long formattedChars,
+                 long p50Nanos, long p99Nanos, long maxNanos) {
+            this.loggerName = loggerName;
+            this.level = level;
+            this.count = count;
+            this.formattedChars = formattedChars;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getLoggerName() {
+            return loggerName;
+        }
+
+        public String getLevel() {
+            return level;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return 交给slf4j后端的消息的字符数，不包括输出到{@link LogSink}的日志
+         */
+        public long getFormattedChars() {
+            return formattedChars;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return loggerName + " " + level + " count=" + count + " chars=" + formattedChars
+                    + " p50=" + p50Nanos + "ns p99=" + p99Nanos + "ns max=" + maxNanos + "ns";
+        }
+    }
+}
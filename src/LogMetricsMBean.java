@@ -0,0 +1,38 @@
+/**
+ * {@link LogMetrics}的JMX接口，注册为mylogger:type=LogMetrics
+ */
+public interface LogMetricsMBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getTotalCount();
+
+    /**
+     * @return 交给slf4j后端的消息的字符数之和；输出到{@link LogSink}(包括批量日志)的消息由sink编码，不计入
+     */
+    long getTotalFormattedChars();
+
+    /**
+     * @return 每项为"logger名 级别 count=.. chars=.. p50=..ns p99=..ns max=..ns"
+     */
+    String[] getSnapshot();
+
+    /**
+     * @return 该logger在该级别(TRACE、DEBUG、INFO、WARN、ERROR)输出的条数
+     */
+    long getCount(String loggerName, String level);
+
+    /**
+     * @return {@link FormatTemplate}缓存的命中率，与是否开启统计无关
+     */
+    double getFormatCacheHitRate();
+
+    long getFormatCacheHitCount();
+
+    long getFormatCacheMissCount();
+
+    long getFormatCacheEvictionCount();
+
+    void reset();
+}
@@ -0,0 +1,144 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按logger名前缀配置调用点限流，MyLogger在格式化之前按format字符串区分调用点
+ * <p>
+ * 也可以用系统属性配置，如-Dmylogger.rateLimit=com.foo.Bar=100/s:200;com.baz=1in10
+ * </p>
+ */
+public final class LogRateLimits {
+    /**
+     * 每个logger最多区分的调用点数，超过后共用一个限流器(动态拼接的format字符串)
+     */
+    private final static int MAX_CALL_SITES = 1024;
+
+    private final static ConcurrentHashMap<String, RateLimitPolicy> policies = new ConcurrentHashMap<>();
+    private final static ConcurrentHashMap<String, CallSites> activeCallSites = new ConcurrentHashMap<>();
+    private static volatile int generation = 0;
+
+    static {
+        String spec = System.getProperty("mylogger.rateLimit");
+        if (spec != null) {
+            for (String entry : spec.split(";")) {
+                int eq = entry.indexOf('=');
+                if (eq > 0) {
+                    policies.put(entry.substring(0, eq).trim(), RateLimitPolicy.parse(entry.substring(eq + 1)));
+                }
+            }
+        }
+    }
+
+    private LogRateLimits() {
+    }
+
+    /**
+     * @param loggerNamePrefix logger名或包名前缀，""表示所有logger
+     */
+    public static synchronized void setPolicy(String loggerNamePrefix, RateLimitPolicy policy) {
+        if (policy == null) {
+            policies.remove(loggerNamePrefix);
+        } else {
+            policies.put(loggerNamePrefix, policy);
+        }
+        generation++;
+    }
+
+    public static synchronized void clear() {
+        policies.clear();
+        generation++;
+    }
+
+    static int generation() {
+        return generation;
+    }
+
+    /**
+     * @return 该logger适用的调用点限流器，没有配置时返回null
+     */
+    static CallSites resolve(String loggerName) {
+        RateLimitPolicy policy = null;
+        int matched = -1;
+        for (Map.Entry<String, RateLimitPolicy> entry : policies.entrySet()) {
+            String prefix = entry.getKey();
+            if (prefix.length() > matched && loggerName.startsWith(prefix)
+                    && (prefix.isEmpty() || loggerName.length() == prefix.length()
+                    || loggerName.charAt(prefix.length()) == '.' || prefix.endsWith("."))) {
+                policy = entry.getValue();
+                matched = prefix.length();
+            }
+        }
+        if (policy == null) {
+            activeCallSites.remove(loggerName);
+            return null;
+        }
+        CallSites callSites = activeCallSites.get(loggerName);
+        if (callSites == null || callSites.policy != policy) {
+            callSites = new CallSites(policy);
+            activeCallSites.put(loggerName, callSites);
+        }
+        return callSites;
+    }
+
+    /**
+     * @return 该logger因限流被丢弃的日志条数
+     */
+    public static long getDroppedCount(String loggerName) {
+        CallSites callSites = activeCallSites.get(loggerName);
+        return callSites == null ? 0 : callSites.getDropped();
+    }
+
+    /**
+     * @return format -> {输出条数, 丢弃条数}，用于把采样后的日志量换算回实际量
+     */
+    public static Map<String, long[]> getCallSiteCounts(String loggerName) {
+        Map<String, long[]> counts = new HashMap<>();
+        CallSites callSites = activeCallSites.get(loggerName);
+        if (callSites != null) {
+            for (Map.Entry<String, RateLimitPolicy.Limiter> entry : callSites.sites.entrySet()) {
+                counts.put(entry.getKey(), new long[]{entry.getValue().getPassed(), entry.getValue().getDropped()});
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 一个logger的所有调用点，以format字符串为key
+     */
+    final static class CallSites {
+        private final static String NULL_FORMAT = "<null>";
+        final RateLimitPolicy policy;
+        private final ConcurrentHashMap<String, RateLimitPolicy.Limiter> sites = new ConcurrentHashMap<>();
+        private final RateLimitPolicy.Limiter overflow;
+
+        CallSites(RateLimitPolicy policy) {
+            this.policy = policy;
+            this.overflow = policy.newLimiter();
+        }
+
+        boolean tryAcquire(String format) {
+            String key = format == null ? NULL_FORMAT : format;
+            RateLimitPolicy.Limiter limiter = sites.get(key);
+            if (limiter == null) {
+                if (sites.size() >= MAX_CALL_SITES) {
+                    return overflow.tryAcquire();
+                }
+                RateLimitPolicy.Limiter created = policy.newLimiter();
+                limiter = sites.putIfAbsent(key, created);
+                if (limiter == null) {
+                    limiter = created;
+                }
+            }
+            return limiter.tryAcquire();
+        }
+
+        long getDropped() {
+            long dropped = overflow.getDropped();
+            for (RateLimitPolicy.Limiter limiter : sites.values()) {
+                dropped += limiter.getDropped();
+            }
+            return dropped;
+        }
+    }
+}
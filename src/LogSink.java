@@ -0,0 +1,48 @@
+/**
+ * 不经过slf4j后端、由MyLogger直接写入的输出目标，用{@link LogSinks}按logger名前缀选择
+ * <p>
+ * 在级别判断和限流之后、在分发线程(同步模式为调用线程，异步模式为{@link AsyncLogDispatcher}的消费线程)调用，
+ * 实现需要线程安全
+ * </p>
+ */
+public interface LogSink {
+    /**
+     * @param threadPrefix   产生日志的线程，格式为"[线程名 线程id]-"
+     * @param caller         调用位置，{@link #isIncludeLocation()}为false时为null
+     * @param argCount       0：format不做格式化；1、2：使用arg1、arg2；-1：使用argArray
+     * @param throwable      要输出的异常，已经从参数中取出(此时最后一个参数不参与{}替换)
+     * @param primitiveTypes arg1、arg2的类型，long/double参数放在prim1、prim2中
+     */
+    void write(String loggerName, int level, long timeMillis, String threadPrefix, StackTraceElement caller,
+               String format, int argCount, Object arg1, Object arg2, Object[] argArray, Throwable throwable,
+               int primitiveTypes, long prim1, long prim2);
+
+    /**
+     * 写入{@link LogBatch}中的所有日志，默认逐条调用{@link #write}，调用时当前的{@link LogContext}为该条日志放入时的上下文；
+     * 实现可以对整批只加一次锁、只做一次IO，这时用{@link LogBatch#context(int)}取每条日志的上下文
+     *
+     * @param caller 整批共用的调用位置，{@link #isIncludeLocation()}为false时为null
+     */
+    default void writeBatch(String loggerName, String threadPrefix, StackTraceElement caller, LogBatch batch) {
+        LogContext previous = LogContext.current();
+        try {
+            for (int i = 0, size = batch.size(); i < size; i++) {
+                LogContext.swap(batch.context(i));
+                write(loggerName, batch.level(i), batch.timeMillis(i), threadPrefix, caller, batch.format(i),
+                        batch.argCount(i), batch.arg1(i), batch.arg2(i), batch.argArray(i), batch.throwable(i),
+                        0, 0L, 0L);
+            }
+        } finally {
+            LogContext.swap(previous);
+        }
+    }
+
+    /**
+     * @return 是否需要调用位置，取调用位置需要遍历调用栈
+     */
+    boolean isIncludeLocation();
+
+    void flush();
+
+    void close();
+}
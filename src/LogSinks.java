@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按logger名前缀选择{@link LogSink}，匹配的logger不再调用slf4j后端
+ * <p>
+ * MyLogger按版本号缓存匹配结果，没有配置任何sink时每条日志只多读一次volatile
+ * </p>
+ */
+public final class LogSinks {
+    private final static ConcurrentHashMap<String, LogSink> sinks = new ConcurrentHashMap<>();
+    private static volatile int generation = 0;
+    private static boolean shutdownHookAdded = false;
+
+    private LogSinks() {
+    }
+
+    /**
+     * @param loggerNamePrefix logger名或包名前缀，""表示所有logger
+     * @param sink             为null时删除；被替换或删除的sink不会被关闭
+     */
+    public static synchronized void setSink(String loggerNamePrefix, LogSink sink) {
+        if (sink == null) {
+            sinks.remove(loggerNamePrefix);
+        } else {
+            sinks.put(loggerNamePrefix, sink);
+            addShutdownHook();
+        }
+        generation++;
+    }
+
+    /**
+     * 删除所有配置并关闭这些sink
+     */
+    public static synchronized void closeAll() {
+        List<LogSink> closing = new ArrayList<>(sinks.values());
+        sinks.clear();
+        generation++;
+        for (LogSink sink : closing) {
+            sink.close();
+        }
+    }
+
+    static int generation() {
+        return generation;
+    }
+
+    /**
+     * @return 最长匹配前缀的sink，没有时返回null
+     */
+    static LogSink resolve(String loggerName) {
+        LogSink sink = null;
+        int matched = -1;
+        for (Map.Entry<String, LogSink> entry : sinks.entrySet()) {
+            String prefix = entry.getKey();
+            if (prefix.length() > matched && loggerName.startsWith(prefix)
+                    && (prefix.isEmpty() || loggerName.length() == prefix.length()
+                    || loggerName.charAt(prefix.length()) == '.' || prefix.endsWith("."))) {
+                sink = entry.getValue();
+                matched = prefix.length();
+            }
+        }
+        return sink;
+    }
+
+    private static void addShutdownHook() {
+        if (shutdownHookAdded) {
+            return;
+        }
+        shutdownHookAdded = true;
+        Runtime.getRuntime().addShutdownHook(new Thread("MyLogger-sinks-shutdown") {
+            @Override
+            public void run() {
+                // 异步模式下先让消费线程处理完缓冲区
+                AsyncLogDispatcher dispatcher = MyLogger.getAsyncDispatcher();
+                if (dispatcher != null) {
+                    dispatcher.shutdown();
+                }
+                closeAll();
+            }
+        });
+    }
+}
@@ -1,13 +1,13 @@
-import org.slf4j.Logger;
-import sun.misc.SharedSecrets;
-
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Created by yangxuehua on 2014/6/30.
  */
 public class LogUtil {
-    private final static ConcurrentHashMap<String, Logger> loggersMap = new ConcurrentHashMap<>(1024);
+    private final static ConcurrentHashMap<String, MyLogger> loggersMap = new ConcurrentHashMap<>(1024);
+    private final static CallerResolver callerResolver = new CallerResolver(LogUtil.class);
+    private final static ErrorStormSuppressor errorStormSuppressor = ErrorStormSuppressor.fromSystemProperties();
     private static boolean classLoaded = false;
     private static Class baseWireableExceptionClass = null;
 
@@ -15,6 +15,34 @@ public class LogUtil {
         Log4jConfUtil.autoConf();
     }
 
+    public static KeyValueEvent kvTrace() {
+        return getLogger().kvTrace();
+    }
+
+    public static KeyValueEvent kvDebug() {
+        return getLogger().kvDebug();
+    }
+
+    public static KeyValueEvent kvInfo() {
+        return getLogger().kvInfo();
+    }
+
+    public static KeyValueEvent kvWarn() {
+        return getLogger().kvWarn();
+    }
+
+    public static KeyValueEvent kvError() {
+        return getLogger().kvError();
+    }
+
+    public static LogBatch openBatch() {
+        return getLogger().openBatch();
+    }
+
+    public static LogBatch openBatch(int maxEvents) {
+        return getLogger().openBatch(maxEvents);
+    }
+
     public static void debug(String msg) {
         getLogger().debug(msg);
     }
@@ -23,6 +51,34 @@ public class LogUtil {
         getLogger().debug(format, arguments);
     }
 
+    public static void debugLong(String format, long arg) {
+        getLogger().debugLong(format, arg);
+    }
+
+    public static void debugDouble(String format, double arg) {
+        getLogger().debugDouble(format, arg);
+    }
+
+    public static void debugLong(String format, Object arg1, long arg2) {
+        getLogger().debugLong(format, arg1, arg2);
+    }
+
+    public static void debugLong(String format, long arg1, long arg2) {
+        getLogger().debugLong(format, arg1, arg2);
+    }
+
+    public static void debug(Supplier<String> msgSupplier) {
+        getLogger().debug(msgSupplier);
+    }
+
+    public static void debug(String format, Supplier<?> argSupplier) {
+        getLogger().debug(format, argSupplier);
+    }
+
+    public static void debug(String format, Supplier<?> arg1Supplier, Supplier<?> arg2Supplier) {
+        getLogger().debug(format, arg1Supplier, arg2Supplier);
+    }
+
     public static void info(String msg) {
         getLogger().info(msg);
     }
@@ -31,6 +87,34 @@ public class LogUtil {
         getLogger().info(format, arguments);
     }
 
+    public static void infoLong(String format, long arg) {
+        getLogger().infoLong(format, arg);
+    }
+
+    public static void infoDouble(String format, double arg) {
+        getLogger().infoDouble(format, arg);
+    }
+
+    public static void infoLong(String format, Object arg1, long arg2) {
+        getLogger().infoLong(format, arg1, arg2);
+    }
+
+    public static void infoLong(String format, long arg1, long arg2) {
+        getLogger().infoLong(format, arg1, arg2);
+    }
+
+    public static void info(Supplier<String> msgSupplier) {
+        getLogger().info(msgSupplier);
+    }
+
+    public static void info(String format, Supplier<?> argSupplier) {
+        getLogger().info(format, argSupplier);
+    }
+
+    public static void info(String format, Supplier<?> arg1Supplier, Supplier<?> arg2Supplier) {
+        getLogger().info(format, arg1Supplier, arg2Supplier);
+    }
+
     public static void warn(String msg) {
         getLogger().warn(msg);
     }
@@ -39,6 +123,34 @@ public class LogUtil {
         getLogger().warn(format, arguments);
     }
 
+    public static void warnLong(String format, long arg) {
+        getLogger().warnLong(format, arg);
+    }
+
+    public static void warnDouble(String format, double arg) {
+        getLogger().warnDouble(format, arg);
+    }
+
+    public static void warnLong(String format, Object arg1, long arg2) {
+        getLogger().warnLong(format, arg1, arg2);
+    }
+
+    public static void warnLong(String format, long arg1, long arg2) {
+        getLogger().warnLong(format, arg1, arg2);
+    }
+
+    public static void warn(Supplier<String> msgSupplier) {
+        getLogger().warn(msgSupplier);
+    }
+
+    public static void warn(String format, Supplier<?> argSupplier) {
+        getLogger().warn(format, argSupplier);
+    }
+
+    public static void warn(String format, Supplier<?> arg1Supplier, Supplier<?> arg2Supplier) {
+        getLogger().warn(format, arg1Supplier, arg2Supplier);
+    }
+
     public static void error(String msg) {
         getLogger().error(msg);
     }
@@ -47,12 +159,43 @@ public class LogUtil {
         getLogger().error(format, arguments);
     }
 
+    public static void errorLong(String format, long arg) {
+        getLogger().errorLong(format, arg);
+    }
+
+    public static void errorDouble(String format, double arg) {
+        getLogger().errorDouble(format, arg);
+    }
+
+    public static void errorLong(String format, Object arg1, long arg2) {
+        getLogger().errorLong(format, arg1, arg2);
+    }
+
+    public static void errorLong(String format, long arg1, long arg2) {
+        getLogger().errorLong(format, arg1, arg2);
+    }
+
+    public static void error(Supplier<String> msgSupplier) {
+        getLogger().error(msgSupplier);
+    }
+
+    public static void error(String format, Supplier<?> argSupplier) {
+        getLogger().error(format, argSupplier);
+    }
+
+    public static void error(String format, Supplier<?> arg1Supplier, Supplier<?> arg2Supplier) {
+        getLogger().error(format, arg1Supplier, arg2Supplier);
+    }
+
     public static void error(String msg, Throwable e) {
         String infoContent = convertErrorToInfo(e);
         if (infoContent != null) {
             getLogger().info(msg + " : " + infoContent);
         } else {
-            getLogger().error(msg, e);
+            MyLogger logger = getLogger();
+            if (logger.isErrorEnabled() && acquireErrorLog(logger, e)) {
+                logger.error(msg, e);
+            }
         }
     }
 
@@ -61,10 +204,20 @@ public class LogUtil {
         if (infoContent != null) {
             getLogger().info(infoContent);
         } else {
-            getLogger().error(e.getMessage(), e);
+            MyLogger logger = getLogger();
+            if (logger.isErrorEnabled() && acquireErrorLog(logger, e)) {
+                logger.error(e.getMessage(), e);
+            }
         }
     }
 
+    /**
+     * @return false 同类异常在当前窗口内已输出过，本次被抑制
+     */
+    private static boolean acquireErrorLog(MyLogger logger, Throwable e) {
+        return errorStormSuppressor == null || errorStormSuppressor.tryAcquire(logger, e);
+    }
+
     /**
      * @param e
      * @return null 不转info, not-null-string 转info content
@@ -83,13 +236,15 @@ public class LogUtil {
         return null;
     }
 
-    private static Logger getLogger() {
-        StackTraceElement ele = SharedSecrets.getJavaLangAccess().getStackTraceElement(new Exception(), 2);
-        String callerClass = ele.getClassName();
-        Logger logger = loggersMap.get(callerClass);
+    private static MyLogger getLogger() {
+        String callerClass = callerResolver.getCallerClassName();
+        MyLogger logger = loggersMap.get(callerClass);
         if (logger == null) {
-            logger = MyLoggerFactory.getLoggerForFullCaller(LogUtil.class, callerClass);
-            loggersMap.put(callerClass, logger);
+            logger = (MyLogger) MyLoggerFactory.getLoggerForFullCaller(LogUtil.class, callerClass);
+            MyLogger existing = loggersMap.putIfAbsent(callerClass, logger);
+            if (existing != null) {
+                logger = existing;
+            }
         }
         return logger;
     }
@@ -0,0 +1,559 @@
+import org.slf4j.helpers.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 写入内存映射文件的{@link LogSink}，绕过slf4j后端的appender链(layout、锁、缓冲流)
+ * <p>
+ * 每条日志按{@link LogLineFormat}格式化成一行UTF-8文本，加上8字节的记录头写入当前段；一个{@link LogBatch}的所有行作为一条记录。
+ * 写入线程用原子加法在段内占位，之后各自复制数据，不需要加锁；段写满时切换到后台线程预先映射好的下一段。
+ * 文件名为"base.00000001"、"base.00000002"...，启动时从已有的最大序号之后继续
+ * </p>
+ * <p>
+ * 记录按4字节对齐，记录头为0xFF 'M' 状态 0和4字节长度：先写长度，再写状态为'W'的标记，复制完数据后把状态改为'C'。
+ * 'C'用release写入(JDK9+用VarHandle，JDK8用Unsafe.storeFence)，本进程内读取映射的段时用acquire读取记录头，
+ * 看到'C'时一定能看到完整的数据。
+ * 0xFF不会出现在UTF-8文本中，长度小于2^29，最高字节也不会是0xFF，所以对齐位置上的0xFF一定是记录头。
+ * 读取时({@link #readSegment(Path, Appendable)})跳过状态不是'C'的记录；遇到0或无法识别的内容(已占位但记录头还没写入，
+ * 或写到一半时进程退出)时向后查找下一个记录头，所以进程崩溃只丢失当时正在写入的记录，之后已经写完的记录仍然可以读出
+ * </p>
+ * <p>
+ * 可以指定{@link SegmentCompressor}，写完的段由它在后台压缩成"base.00000001.gz"
+ * </p>
+ */
+public final class MappedFileSink implements LogSink {
+    public final static int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    /**
+     * 占位失败也会增加段内位置，留出余量避免int溢出
+     */
+    public final static int MAX_SEGMENT_SIZE = 1 << 29;
+    private final static int HEADER_BYTES = 8;
+    private final static int ALIGNMENT = 4;
+    private final static byte MARKER = (byte) 0xFF;
+    private final static int HEADER_WRITING = 0xFF000000 | ('M' << 16) | ('W' << 8);
+    private final static int HEADER_COMMITTED = 0xFF000000 | ('M' << 16) | ('C' << 8);
+    /**
+     * JDK9+：VarHandle的setRelease/getAcquire，类型为(ByteBuffer, int, int)void和(ByteBuffer, int)int
+     */
+    private final static MethodHandle INT_SET_RELEASE;
+    private final static MethodHandle INT_GET_ACQUIRE;
+    /**
+     * JDK8：Unsafe.storeFence()/loadFence()
+     */
+    private final static MethodHandle STORE_FENCE;
+    private final static MethodHandle LOAD_FENCE;
+
+    static {
+        MethodHandle setRelease = null;
+        MethodHandle getAcquire = null;
+        try {
+            Class<?> accessMode = Class.forName("java.lang.invoke.VarHandle$AccessMode");
+            Object varHandle = MethodHandles.class.getMethod("byteBufferViewVarHandle", Class.class, ByteOrder.class)
+                    .invoke(null, int[].class, ByteOrder.BIG_ENDIAN);
+            java.lang.reflect.Method toMethodHandle = varHandle.getClass().getMethod("toMethodHandle", accessMode);
+            setRelease = ((MethodHandle) toMethodHandle.invoke(varHandle, accessModeValue(accessMode, "SET_RELEASE")))
+                    .asType(MethodType.methodType(void.class, ByteBuffer.class, int.class, int.class));
+            getAcquire = ((MethodHandle) toMethodHandle.invoke(varHandle, accessModeValue(accessMode, "GET_ACQUIRE")))
+                    .asType(MethodType.methodType(int.class, ByteBuffer.class, int.class));
+        } catch (Throwable e) {
+            setRelease = null;
+            getAcquire = null;
+        }
+        INT_SET_RELEASE = setRelease;
+        INT_GET_ACQUIRE = getAcquire;
+
+        MethodHandle storeFence = null;
+        MethodHandle loadFence = null;
+        if (setRelease == null) {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                Object unsafe = theUnsafe.get(null);
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                storeFence = lookup.findVirtual(unsafeClass, "storeFence", MethodType.methodType(void.class))
+                        .bindTo(unsafe);
+                loadFence = lookup.findVirtual(unsafeClass, "loadFence", MethodType.methodType(void.class))
+                        .bindTo(unsafe);
+            } catch (Throwable e) {
+                storeFence = null;
+                loadFence = null;
+            }
+        }
+        STORE_FENCE = storeFence;
+        LOAD_FENCE = loadFence;
+    }
+
+    private final Path directory;
+    private final String baseName;
+    private final int segmentSize;
+    private final boolean includeLocation;
+    private final SegmentCompressor compressor;
+    private final LinkedBlockingQueue<Segment> finishing = new LinkedBlockingQueue<>();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread finisher;
+    private volatile Segment current;
+    /**
+     * 以下字段只在持有this锁时修改
+     */
+    private Segment spare = null;
+    private int nextIndex;
+    private volatile boolean closed = false;
+
+    /**
+     * @param basePath    段文件名的前缀，如/var/log/app/orders.log
+     * @param segmentSize 每段的字节数
+     */
+    public MappedFileSink(Path basePath, int segmentSize, boolean includeLocation) throws IOException {
+        this(basePath, segmentSize, includeLocation, null);
+    }
+
+    /**
+     * @param compressor 不为null时写完的段交给它在后台压缩
+     */
+    public MappedFileSink(Path basePath, int segmentSize, boolean includeLocation, SegmentCompressor compressor)
+            throws IOException {
+        if (segmentSize <= HEADER_BYTES || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segmentSize: " + segmentSize);
+        }
+        Path absolute = basePath.toAbsolutePath();
+        this.directory = absolute.getParent();
+        this.baseName = absolute.getFileName().toString();
+        this.segmentSize = segmentSize;
+        this.includeLocation = includeLocation;
+        this.compressor = compressor;
+        Files.createDirectories(directory);
+        this.nextIndex = lastSegmentIndex() + 1;
+        this.current = mapSegment(nextIndex++);
+        this.finisher = new Thread("MyLogger-mmap-" + baseName) {
+            @Override
+            public void run() {
+                runFinisher();
+            }
+        };
+        finisher.setDaemon(true);
+        finisher.start();
+    }
+
+    @Override
+    public boolean isIncludeLocation() {
+        return includeLocation;
+    }
+
+    /**
+     * @return 超过段大小或映射新段失败而丢弃的日志条数
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void write(String loggerName, int level, long timeMillis, String threadPrefix, StackTraceElement caller,
+                      String format, int argCount, Object arg1, Object arg2, Object[] argArray, Throwable throwable,
+                      int primitiveTypes, long prim1, long prim2) {
+        if (closed) {
+            return;
+        }
+        LogLineFormat.LineEncoder encoder = LogLineFormat.acquireEncoder();
+        try {
+            int length = encoder.encode(loggerName, level, timeMillis, threadPrefix, caller, format, argCount,
+                    arg1, arg2, argArray, throwable, primitiveTypes, prim1, prim2);
+            append(encoder.bytes(), length, 1);
+        } finally {
+            encoder.release();
+        }
+    }
+
+    /**
+     * 整批作为一条记录写入，只占位一次；超过段大小时逐条写入
+     */
+    @Override
+    public void writeBatch(String loggerName, String threadPrefix, StackTraceElement caller, LogBatch batch) {
+        if (closed) {
+            return;
+        }
+        LogLineFormat.LineEncoder encoder = LogLineFormat.acquireEncoder();
+        try {
+            int length = encoder.encodeBatch(loggerName, threadPrefix, caller, batch);
+            if (align(HEADER_BYTES + length) > segmentSize) {
+                LogSink.super.writeBatch(loggerName, threadPrefix, caller, batch);
+                return;
+            }
+            append(encoder.bytes(), length, batch.size());
+        } finally {
+            encoder.release();
+        }
+    }
+
+    /**
+     * @param events bytes中包含的日志条数，写入失败时计入丢弃数
+     */
+    private void append(byte[] bytes, int length, int events) {
+        int size = align(HEADER_BYTES + length);
+        if (size > segmentSize) {
+            dropped.add(events);
+            return;
+        }
+        for (; ; ) {
+            Segment segment = current;
+            segment.pending.incrementAndGet();
+            int start = segment.position.getAndAdd(size);
+            if (start >= 0 && start <= segmentSize - size) {
+                ByteBuffer buffer = segment.buffer;
+                buffer.putInt(start + 4, length);
+                buffer.putInt(start, HEADER_WRITING);
+                // JDK8没有按绝对位置的批量put，用duplicate定位
+                ByteBuffer target = buffer.duplicate();
+                target.position(start + HEADER_BYTES);
+                target.put(bytes, 0, length);
+                putIntRelease(buffer, start, HEADER_COMMITTED);
+                release(segment);
+                return;
+            }
+            release(segment);
+            if (!roll(segment)) {
+                dropped.add(events);
+                return;
+            }
+        }
+    }
+
+    private void release(Segment segment) {
+        if (segment.pending.decrementAndGet() == 0 && segment.sealed) {
+            finish(segment);
+        }
+    }
+
+    private void finish(Segment segment) {
+        if (segment.finished.compareAndSet(false, true)) {
+            finishing.offer(segment);
+        }
+    }
+
+    /**
+     * 切换到下一段；其他线程已经切换过时直接返回
+     *
+     * @return false：已关闭或无法映射新段
+     */
+    private synchronized boolean roll(Segment full) {
+        if (closed) {
+            return false;
+        }
+        if (current != full) {
+            return true;
+        }
+        Segment next = spare;
+        spare = null;
+        if (next == null) {
+            try {
+                next = mapSegment(nextIndex++);
+            } catch (IOException e) {
+                Util.report("MyLogger: failed to map next log segment of " + baseName, e);
+                return false;
+            }
+        }
+        full.sealed = true;
+        current = next;
+        if (full.pending.get() == 0) {
+            finish(full);
+        }
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        current.buffer.force();
+    }
+
+    /**
+     * 关闭后不再写入，等待后台线程把最后一段写回磁盘并截断
+     */
+    @Override
+    public void close() {
+        Segment last;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            last = current;
+            last.sealed = true;
+            // 之后的占位都会失败，已经占位成功的线程计在pending中
+            last.position.getAndAdd(segmentSize);
+        }
+        if (last.pending.get() == 0) {
+            finish(last);
+        }
+        try {
+            finisher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 后台线程：把写满的段写回磁盘并截断到实际长度，预先映射下一段
+     */
+    private void runFinisher() {
+        for (; ; ) {
+            Segment segment;
+            try {
+                segment = finishing.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (segment != null) {
+                finishSegment(segment);
+            }
+            synchronized (this) {
+                if (closed) {
+                    if (spare != null) {
+                        deleteSpare(spare);
+                        spare = null;
+                    }
+                    if (current.finished.get() && finishing.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                if (spare == null) {
+                    try {
+                        spare = mapSegment(nextIndex++);
+                    } catch (IOException e) {
+                        Util.report("MyLogger: failed to map next log segment of " + baseName, e);
+                    }
+                }
+            }
+        }
+    }
+
+    private void finishSegment(Segment segment) {
+        try {
+            segment.buffer.force();
+            int end = usedLength(segment.buffer, segmentSize);
+            try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            }
+        } catch (Exception e) {
+            // 有的平台不能截断仍在映射中的文件，末尾的0不影响读取
+        }
+        if (compressor != null) {
+            compressor.submit(segment.path);
+        }
+    }
+
+    private void deleteSpare(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            // 只是一个空文件
+        }
+    }
+
+    /**
+     * @return 段中最后一条记录之后的位置
+     */
+    private static int usedLength(ByteBuffer buffer, int limit) {
+        int used = 0;
+        int pos = 0;
+        for (; ; ) {
+            pos = findHeader(buffer, pos, limit);
+            if (pos < 0) {
+                return used;
+            }
+            if (!isRecord(buffer, pos, limit)) {
+                pos += ALIGNMENT;
+                continue;
+            }
+            pos += align(HEADER_BYTES + buffer.getInt(pos + 4));
+            used = Math.min(pos, limit);
+        }
+    }
+
+    /**
+     * 从对齐的位置pos开始查找下一个记录头
+     *
+     * @return 记录头的位置，没有时返回-1
+     */
+    private static int findHeader(ByteBuffer buffer, int pos, int limit) {
+        for (; pos <= limit - HEADER_BYTES; pos += ALIGNMENT) {
+            if (buffer.get(pos) == MARKER) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return pos处是否为完整的记录头，且长度没有超出limit
+     */
+    private static boolean isRecord(ByteBuffer buffer, int pos, int limit) {
+        int header = getIntAcquire(buffer, pos);
+        int length = buffer.getInt(pos + 4);
+        return (header == HEADER_COMMITTED || header == HEADER_WRITING)
+                && length >= 0 && length <= limit - pos - HEADER_BYTES;
+    }
+
+    private static Object accessModeValue(Class<?> accessMode, String name) {
+        for (Object value : accessMode.getEnumConstants()) {
+            if (((Enum<?>) value).name().equals(name)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    /**
+     * 之前对buffer的写入不会被重排到这次写入之后
+     */
+    private static void putIntRelease(ByteBuffer buffer, int index, int value) {
+        try {
+            if (INT_SET_RELEASE != null) {
+                INT_SET_RELEASE.invokeExact(buffer, index, value);
+                return;
+            }
+            if (STORE_FENCE != null) {
+                STORE_FENCE.invokeExact();
+            }
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        buffer.putInt(index, value);
+    }
+
+    /**
+     * 之后对buffer的读取不会被重排到这次读取之前；只对映射的段使用，读取文件内容得到的堆内buffer直接读取
+     */
+    private static int getIntAcquire(ByteBuffer buffer, int index) {
+        if (!buffer.isDirect()) {
+            return buffer.getInt(index);
+        }
+        try {
+            if (INT_GET_ACQUIRE != null) {
+                return (int) INT_GET_ACQUIRE.invokeExact(buffer, index);
+            }
+            int value = buffer.getInt(index);
+            if (LOAD_FENCE != null) {
+                LOAD_FENCE.invokeExact();
+            }
+            return value;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int align(int size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private Segment mapSegment(int index) throws IOException {
+        Path path = directory.resolve(String.format("%s.%08d", baseName, index));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // 映射在channel关闭后仍然有效
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+    }
+
+    private int lastSegmentIndex() throws IOException {
+        int last = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, baseName + ".*")) {
+            for (Path path : stream) {
+                String suffix = path.getFileName().toString().substring(baseName.length() + 1);
+                int dot = suffix.indexOf('.');
+                if (dot > 0) {
+                    // 已经压缩等后续处理过的段，如base.00000003.gz
+                    suffix = suffix.substring(0, dot);
+                }
+                try {
+                    last = Math.max(last, Integer.parseInt(suffix));
+                } catch (NumberFormatException e) {
+                    // 不是段文件
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * 把一个段中完整的记录追加到out，跳过未完成的记录；文件名以.gz结尾时先解压
+     *
+     * @return 读出的记录数
+     */
+    public static long readSegment(Path segment, Appendable out) throws IOException {
+        byte[] bytes;
+        if (segment.getFileName().toString().endsWith(".gz")) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(segment), 64 * 1024)) {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                byte[] chunk = new byte[64 * 1024];
+                for (int n; (n = in.read(chunk)) > 0; ) {
+                    buf.write(chunk, 0, n);
+                }
+                bytes = buf.toByteArray();
+            }
+        } else {
+            bytes = Files.readAllBytes(segment);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int limit = buffer.limit();
+        int pos = 0;
+        long count = 0;
+        for (; ; ) {
+            pos = findHeader(buffer, pos, limit);
+            if (pos < 0) {
+                return count;
+            }
+            if (!isRecord(buffer, pos, limit)) {
+                pos += ALIGNMENT;
+                continue;
+            }
+            int length = buffer.getInt(pos + 4);
+            if (buffer.getInt(pos) == HEADER_COMMITTED) {
+                out.append(new String(bytes, pos + HEADER_BYTES, length, StandardCharsets.UTF_8));
+                count++;
+            }
+            pos += align(HEADER_BYTES + length);
+        }
+    }
+
+    private final static class Segment {
+        final Path path;
+        final MappedByteBuffer buffer;
+        /**
+         * 下一条记录的起始位置，占位失败的线程也会把它加大，所以可能超过段大小
+         */
+        final AtomicInteger position = new AtomicInteger();
+        /**
+         * 正在写入本段的线程数
+         */
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicBoolean finished = new AtomicBoolean();
+        volatile boolean sealed = false;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+}
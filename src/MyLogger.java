@@ -1,11 +1,10 @@
 import org.slf4j.Logger;
 import org.slf4j.Marker;
-import org.slf4j.helpers.FormattingTuple;
-import org.slf4j.helpers.MessageFormatter;
+import org.slf4j.helpers.Util;
 import org.slf4j.spi.LocationAwareLogger;
 
-import java.io.ByteArrayOutputStream;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.util.function.Supplier;
 
 /**
  * Created by yangxuehua on 2014/6/30.
@@ -14,11 +13,66 @@ import java.io.PrintWriter;
 public class MyLogger implements Logger {
     private final static String LINE_SPERATOR = System.getProperty("line.separator");
     private final static String SPACE = " ";
-    private static boolean removeLine = false;
+    private final static int LEVEL_OFF = LogConfig.LEVEL_OFF;
+    private final static int ARG_ARRAY = LogFormatter.ARG_ARRAY;
+    private final static String KEY_VALUE_EVENT_FQCN = KeyValueEvent.class.getName();
+    private final static CallerResolver keyValueCallerResolver = new CallerResolver(KeyValueEvent.class);
+    private final static String LOG_BATCH_FQCN = LogBatch.class.getName();
+    private final static CallerResolver batchCallerResolver = new CallerResolver(LogBatch.class);
+    /**
+     * 后端配置的版本号，每次{@link #refreshLevels()}加一，各logger据此判断缓存的级别是否失效
+     */
+    private static volatile int levelGeneration = 1;
+    private final static int LEVEL_GENERATION_MASK = 0x1FFFFFFF;
+    /**
+     * 后端自己的配置变更(log4j的configureAndWatch和JMX、logback的scan等)不会通知MyLogger，
+     * 所以每隔这么多毫秒使缓存的级别失效一次，级别变更最多延迟这么久生效；0表示只在{@link #refreshLevels()}时失效
+     */
+    private final static long LEVEL_REFRESH_MILLIS = Long.getLong("mylogger.levelRefreshMillis", 1000L);
+
+    static {
+        if (LEVEL_REFRESH_MILLIS > 0) {
+            startLevelRefreshThread();
+        }
+    }
+    /**
+     * 不为null时开启异步模式，见{@link #setAsyncDispatcher(AsyncLogDispatcher)}
+     */
+    private static volatile AsyncLogDispatcher asyncDispatcher = AsyncLogDispatcher.fromSystemProperties();
+    /**
+     * {@link #getStackTrace(Throwable)}和文本sink使用的异常栈格式
+     */
+    private static volatile StackTraceRenderer stackTraceRenderer = StackTraceRenderer.fromSystemProperties();
+    private final static ThreadLocal<ThreadPrefix> threadPrefixes = new ThreadLocal<ThreadPrefix>() {
+        @Override
+        protected ThreadPrefix initialValue() {
+            return new ThreadPrefix();
+        }
+    };
     private final Logger internalSlf4jLogger;
 
     private LocationAwareLogger locationAwareLogger = null;
     private String fqcn = null;
+    /**
+     * 非LocationAwareLogger时用于取业务代码的调用位置，跳过MyLogger和fqcn的栈帧
+     */
+    private final CallerResolver callerResolver;
+    /**
+     * 缓存的级别状态：高29位为levelGeneration，低3位为最低可用级别的序号(TRACE=0 ... ERROR=4，OFF=5)
+     * <p>
+     * 不声明为volatile：int的读写是原子的，读到旧值时版本号不一致只会多刷新一次，
+     * 所以级别判断只有读取levelGeneration一次volatile读
+     * </p>
+     */
+    private int levelState = 0;
+    private volatile LogRateLimits.CallSites rateLimits = null;
+    private volatile int rateLimitGeneration = -1;
+    private volatile LogSink sink = null;
+    private volatile int sinkGeneration = -1;
+    /**
+     * 开启{@link LogMetrics}后第一次输出时从LogMetrics取得
+     */
+    private LogMetrics.LoggerMetrics metrics = null;
 
     MyLogger(Logger internalLogger) {
         this(internalLogger, MyLogger.class);
@@ -26,14 +80,15 @@ public class MyLogger implements Logger {
 
     MyLogger(Logger internalLogger, Class<?> fqcn) {
         this.internalSlf4jLogger = internalLogger;
+        if (fqcn != null) {
+            this.fqcn = fqcn.getName();
+        } else {
+            this.fqcn = MyLogger.class.getName();
+        }
         if (this.internalSlf4jLogger != null && this.internalSlf4jLogger instanceof LocationAwareLogger) {
             locationAwareLogger = (LocationAwareLogger) this.internalSlf4jLogger;
-            if (fqcn != null) {
-                this.fqcn = fqcn.getName();
-            } else {
-                this.fqcn = MyLogger.class.getName();
-            }
         }
+        this.callerResolver = new CallerResolver(MyLogger.class.getName(), this.fqcn);
     }
 
     private static String removeLineFeed(String s) {
@@ -43,10 +98,120 @@ public class MyLogger implements Logger {
         return "";
     }
 
+    /**
+     * 后端(log4j等)的级别配置变更后调用，使所有MyLogger缓存的级别状态失效，下次调用时重新从后端读取；
+     * 不调用时最多延迟mylogger.levelRefreshMillis生效
+     */
+    public static synchronized void refreshLevels() {
+        levelGeneration++;
+    }
+
+    private static void startLevelRefreshThread() {
+        Thread refresher = new Thread("MyLogger-level-refresh") {
+            @Override
+            public void run() {
+                for (; ; ) {
+                    try {
+                        Thread.sleep(LEVEL_REFRESH_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    refreshLevels();
+                }
+            }
+        };
+        refresher.setDaemon(true);
+        refresher.start();
+    }
+
+    /**
+     * 开启(dispatcher不为null)或关闭异步模式，原来的dispatcher会被关闭并处理完缓冲区中剩余的事件
+     */
+    public static void setAsyncDispatcher(AsyncLogDispatcher dispatcher) {
+        if (dispatcher != null) {
+            dispatcher.start();
+        }
+        AsyncLogDispatcher previous = asyncDispatcher;
+        asyncDispatcher = dispatcher;
+        if (previous != null && previous != dispatcher) {
+            previous.shutdown();
+        }
+    }
+
+    public static AsyncLogDispatcher getAsyncDispatcher() {
+        return asyncDispatcher;
+    }
+
+    private static int packLevelState(int generation, int level) {
+        int ordinal = level == LEVEL_OFF ? 5 : Math.max(0, Math.min(level / 10, 4));
+        return ((generation & LEVEL_GENERATION_MASK) << 3) | ordinal;
+    }
+
+    /**
+     * 级别判断的快速路径：只读取缓存的级别状态，不做任何对象分配
+     */
+    private boolean isLevelEnabled(int level) {
+        int state = levelState;
+        if ((state >>> 3) != (levelGeneration & LEVEL_GENERATION_MASK)) {
+            state = refreshLevelState();
+        }
+        return level >= (state & 7) * 10;
+    }
+
+    /**
+     * 优先级：{@link LevelOverrides}的运行时覆盖、{@link Log4jConfUtil}配置快照中的级别、后端的级别
+     */
+    private int refreshLevelState() {
+        int generation = levelGeneration;
+        int level = LevelOverrides.resolve(getName());
+        if (level == LogConfig.LEVEL_NOT_SET) {
+            level = Log4jConfUtil.getConfig().getLevel(getName());
+        }
+        if (level == LogConfig.LEVEL_NOT_SET) {
+            if (internalSlf4jLogger.isTraceEnabled()) {
+                level = LocationAwareLogger.TRACE_INT;
+            } else if (internalSlf4jLogger.isDebugEnabled()) {
+                level = LocationAwareLogger.DEBUG_INT;
+            } else if (internalSlf4jLogger.isInfoEnabled()) {
+                level = LocationAwareLogger.INFO_INT;
+            } else if (internalSlf4jLogger.isWarnEnabled()) {
+                level = LocationAwareLogger.WARN_INT;
+            } else if (internalSlf4jLogger.isErrorEnabled()) {
+                level = LocationAwareLogger.ERROR_INT;
+            } else {
+                level = LEVEL_OFF;
+            }
+        }
+        int state = packLevelState(generation, level);
+        levelState = state;
+        return state;
+    }
+
+    /**
+     * 按{@link #getStackTraceRenderer()}的设置输出异常栈，默认与printStackTrace()相同
+     */
     public static String getStackTrace(Throwable e) {
-        ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        e.printStackTrace(new PrintWriter(buf, true));
-        return buf.toString();
+        return stackTraceRenderer.render(e);
+    }
+
+    /**
+     * 替换{@link #getStackTrace(Throwable)}和文本sink使用的异常栈格式，null恢复为{@link StackTraceRenderer#FULL}
+     */
+    public static void setStackTraceRenderer(StackTraceRenderer renderer) {
+        stackTraceRenderer = renderer == null ? StackTraceRenderer.FULL : renderer;
+    }
+
+    public static StackTraceRenderer getStackTraceRenderer() {
+        return stackTraceRenderer;
+    }
+
+    /**
+     * 把异常栈直接写入out，不经过中间的字符串
+     *
+     * @param renderer 控制栈帧数、合并和去重，见{@link StackTraceRenderer}
+     */
+    public static void getStackTrace(Throwable e, Appendable out, StackTraceRenderer renderer) throws IOException {
+        renderer.render(e, out);
     }
 
     /**
@@ -57,6 +222,49 @@ public class MyLogger implements Logger {
         return this.internalSlf4jLogger.getName();
     }
 
+    /**
+     * 结构化日志，级别未开启时返回{@link KeyValueEvent#NOOP}。
+     * 不叫atXxx()：slf4j 2.x的Logger中atXxx()返回LoggingEventBuilder，同名的方法无法编译
+     */
+    public KeyValueEvent kvTrace() {
+        return isLevelEnabled(LocationAwareLogger.TRACE_INT)
+                ? KeyValueEvent.acquire(this, LocationAwareLogger.TRACE_INT) : KeyValueEvent.NOOP;
+    }
+
+    public KeyValueEvent kvDebug() {
+        return isLevelEnabled(LocationAwareLogger.DEBUG_INT)
+                ? KeyValueEvent.acquire(this, LocationAwareLogger.DEBUG_INT) : KeyValueEvent.NOOP;
+    }
+
+    public KeyValueEvent kvInfo() {
+        return isLevelEnabled(LocationAwareLogger.INFO_INT)
+                ? KeyValueEvent.acquire(this, LocationAwareLogger.INFO_INT) : KeyValueEvent.NOOP;
+    }
+
+    public KeyValueEvent kvWarn() {
+        return isLevelEnabled(LocationAwareLogger.WARN_INT)
+                ? KeyValueEvent.acquire(this, LocationAwareLogger.WARN_INT) : KeyValueEvent.NOOP;
+    }
+
+    public KeyValueEvent kvError() {
+        return isLevelEnabled(LocationAwareLogger.ERROR_INT)
+                ? KeyValueEvent.acquire(this, LocationAwareLogger.ERROR_INT) : KeyValueEvent.NOOP;
+    }
+
+    /**
+     * 开始一个批次，缓冲{@link LogBatch#DEFAULT_MAX_EVENTS}条时自动提交
+     */
+    public LogBatch openBatch() {
+        return LogBatch.acquire(this, LogBatch.DEFAULT_MAX_EVENTS);
+    }
+
+    /**
+     * @param maxEvents 缓冲达到这个条数时自动提交
+     */
+    public LogBatch openBatch(int maxEvents) {
+        return LogBatch.acquire(this, maxEvents);
+    }
+
     /**
      * Is the logger instance enabled for the TRACE level?
      *
@@ -66,26 +274,385 @@ public class MyLogger implements Logger {
      */
     @Override
     public boolean isTraceEnabled() {
-        return this.internalSlf4jLogger.isTraceEnabled();
+        return isLevelEnabled(LocationAwareLogger.TRACE_INT);
+    }
+
+    /**
+     * 所有日志方法在级别判断通过后都进入这里。开启异步模式时事件写入{@link AsyncLogDispatcher}，否则在调用线程直接分发
+     *
+     * @param argCount 0：msg不做格式化；1、2：使用arg1、arg2；{@link #ARG_ARRAY}：使用argArray
+     */
+    private void logInternal(Marker marker, int level, String format, int argCount,
+                             Object arg1, Object arg2, Object[] argArray, Throwable t) {
+        logInternal(marker, level, format, argCount, arg1, arg2, argArray, t, 0, 0L, 0L);
+    }
+
+    /**
+     * @param primitiveTypes 见{@link LogFormatter#primitiveTypes(int, int)}，long/double参数放在prim1、prim2中，不装箱
+     */
+    private void logInternal(Marker marker, int level, String format, int argCount,
+                             Object arg1, Object arg2, Object[] argArray, Throwable t,
+                             int primitiveTypes, long prim1, long prim2) {
+        if (!acquireRateLimit(format)) {
+            return;
+        }
+        LogSink sink = sink();
+        boolean sinkLocation = sink != null && sink.isIncludeLocation();
+        AsyncLogDispatcher dispatcher = asyncDispatcher;
+        if (dispatcher != null) {
+            StackTraceElement caller = null;
+            if (locationAwareLogger == null || dispatcher.isIncludeLocation() || sinkLocation) {
+                caller = callerResolver.getCallerFrame();
+            }
+            if (dispatcher.publish(this, marker, level, format, argCount, arg1, arg2, argArray, t,
+                    primitiveTypes, prim1, prim2, threadPrefix(), caller, LogContext.current())) {
+                return;
+            }
+        }
+        if (locationAwareLogger != null && sink == null) {
+            dispatch(marker, level, format, argCount, arg1, arg2, argArray, t, primitiveTypes, prim1, prim2,
+                    null, null);
+            return;
+        }
+        dispatch(marker, level, format, argCount, arg1, arg2, argArray, t, primitiveTypes, prim1, prim2,
+                threadPrefix(), locationAwareLogger == null || sinkLocation ? callerResolver.getCallerFrame() : null);
+    }
+
+    /**
+     * @return {@link LogSinks}中为本logger配置的sink，没有时返回null
+     */
+    private LogSink sink() {
+        int generation = LogSinks.generation();
+        if (generation != sinkGeneration) {
+            sink = LogSinks.resolve(getName());
+            sinkGeneration = generation;
+        }
+        return sink;
+    }
+
+    /**
+     * 按{@link LogRateLimits}中为本logger配置的策略对调用点(format)限流，在格式化之前判断
+     */
+    private boolean acquireRateLimit(String format) {
+        int generation = LogRateLimits.generation();
+        if (generation != rateLimitGeneration) {
+            rateLimits = LogRateLimits.resolve(getName());
+            rateLimitGeneration = generation;
+        }
+        LogRateLimits.CallSites callSites = rateLimits;
+        return callSites == null || callSites.tryAcquire(format);
+    }
+
+    /**
+     * {@link KeyValueEvent#log(String)}等方法进入这里：限流后把键值对放入MDC(输出到{@link LogSink}时放入{@link LogContext})，
+     * 在调用线程同步分发
+     */
+    void logKeyValues(KeyValueEvent event, int level, String format, int argCount,
+                      Object arg1, Object arg2, Object[] argArray) {
+        if (!acquireRateLimit(format)) {
+            event.release();
+            return;
+        }
+        if (sink() != null) {
+            // sink不读MDC：键值对加到当前的LogContext中，由sink随上下文一起写入
+            LogContext.Scope scope = event.addTo(LogContext.current()).attach();
+            try {
+                dispatch(null, level, format, argCount, arg1, arg2, argArray, event.getCause(), 0, 0L, 0L,
+                        threadPrefix(), keyValueCallerResolver.getCallerFrame(), KEY_VALUE_EVENT_FQCN);
+            } finally {
+                scope.close();
+                event.release();
+            }
+            return;
+        }
+        // 先同步上下文，同名的key以本条日志的键值对为准
+        LogContext.syncMdc();
+        event.pushToMdc();
+        try {
+            if (locationAwareLogger != null) {
+                dispatch(null, level, format, argCount, arg1, arg2, argArray, event.getCause(), 0, 0L, 0L,
+                        null, null, KEY_VALUE_EVENT_FQCN);
+            } else {
+                dispatch(null, level, format, argCount, arg1, arg2, argArray, event.getCause(), 0, 0L, 0L,
+                        threadPrefix(), keyValueCallerResolver.getCallerFrame(), KEY_VALUE_EVENT_FQCN);
+            }
+        } finally {
+            event.popFromMdc();
+        }
+    }
+
+    /**
+     * @return 本logger因调用点限流被丢弃的日志条数
+     */
+    public long getRateLimitDroppedCount() {
+        return LogRateLimits.getDroppedCount(getName());
+    }
+
+    /**
+     * 格式化并交给后端logger，异步模式下在消费线程中调用
+     *
+     * @param threadPrefix 不为null时在消息前加上"[线程名 线程id]-[类.方法(行号)]-"前缀，threadPrefix为其中的线程部分
+     */
+    void dispatch(Marker marker, int level, String format, int argCount, Object arg1, Object arg2,
+                  Object[] argArray, Throwable t, int primitiveTypes, long prim1, long prim2,
+                  String threadPrefix, StackTraceElement caller) {
+        dispatch(marker, level, format, argCount, arg1, arg2, argArray, t, primitiveTypes, prim1, prim2,
+                threadPrefix, caller, fqcn);
+    }
+
+    /**
+     * @param callerFqcn 传给LocationAwareLogger的fqcn，结构化日志为{@link KeyValueEvent}
+     */
+    private void dispatch(Marker marker, int level, String format, int argCount, Object arg1, Object arg2,
+                          Object[] argArray, Throwable t, int primitiveTypes, long prim1, long prim2,
+                          String threadPrefix, StackTraceElement caller, String callerFqcn) {
+        if (Log4jConfUtil.getConfig().isRemoveLine()) {
+            format = removeLineFeed(format);
+        }
+        Throwable throwable = t;
+        if (argCount != 0) {
+            throwable = LogFormatter.getThrowableCandidate(argCount, arg1, arg2, argArray);
+        }
+        LogSink sink = sink();
+        if (sink != null) {
+            writeToSink(sink, level, format, argCount, arg1, arg2, argArray, throwable, primitiveTypes, prim1, prim2,
+                    threadPrefix, caller);
+            return;
+        }
+        String message = buildMessage(format, argCount, arg1, arg2, argArray, throwable, primitiveTypes, prim1, prim2,
+                threadPrefix, caller);
+        LogContext.syncMdc();
+        if (!LogMetrics.enabled()) {
+            logToBackend(marker, level, message, throwable, callerFqcn);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            logToBackend(marker, level, message, throwable, callerFqcn);
+        } finally {
+            metrics().record(level, message == null ? 0 : message.length(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param threadPrefix 不为null时在消息前加上"[线程名 线程id]-[类.方法(行号)]-"前缀
+     */
+    private static String buildMessage(String format, int argCount, Object arg1, Object arg2, Object[] argArray,
+                                       Throwable throwable, int primitiveTypes, long prim1, long prim2,
+                                       String threadPrefix, StackTraceElement caller) {
+        if (threadPrefix == null && (argCount == 0 || format == null)) {
+            return format;
+        }
+        StringBuilder buf = LogFormatter.acquireBuilder();
+        try {
+            if (threadPrefix != null) {
+                appendPrefix(buf, threadPrefix, caller);
+            }
+            if (argCount == 0) {
+                buf.append(format);
+            } else {
+                LogFormatter.formatTo(buf, format, argCount, arg1, arg2, argArray, throwable,
+                        primitiveTypes, prim1, prim2);
+            }
+            return buf.toString();
+        } finally {
+            LogFormatter.releaseBuilder(buf);
+        }
+    }
+
+    /**
+     * {@link LogBatch}放入日志时的级别判断和限流
+     */
+    boolean acceptBatchEvent(int level, String format) {
+        return isLevelEnabled(level) && acquireRateLimit(format);
+    }
+
+    /**
+     * 在调用线程输出一个批次：有sink时调用一次{@link LogSink#writeBatch}，否则逐条交给后端
+     */
+    void dispatchBatch(LogBatch batch) {
+        int size = batch.size();
+        if (Log4jConfUtil.getConfig().isRemoveLine()) {
+            for (int i = 0; i < size; i++) {
+                batch.setFormat(i, removeLineFeed(batch.format(i)));
+            }
+        }
+        LogSink sink = sink();
+        if (sink != null) {
+            StackTraceElement caller = sink.isIncludeLocation() ? batchCallerResolver.getCallerFrame() : null;
+            if (!LogMetrics.enabled()) {
+                sink.writeBatch(getName(), threadPrefix(), caller, batch);
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                sink.writeBatch(getName(), threadPrefix(), caller, batch);
+            } finally {
+                long nanosPerEvent = (System.nanoTime() - start) / size;
+                for (int i = 0; i < size; i++) {
+                    metrics().record(batch.level(i), LogMetrics.NOT_FORMATTED, nanosPerEvent);
+                }
+            }
+            return;
+        }
+        String threadPrefix = null;
+        StackTraceElement caller = null;
+        if (locationAwareLogger == null) {
+            threadPrefix = threadPrefix();
+            caller = batchCallerResolver.getCallerFrame();
+        }
+        boolean metricsEnabled = LogMetrics.enabled();
+        LogContext previous = LogContext.current();
+        try {
+            for (int i = 0; i < size; i++) {
+                // 每条日志使用放入时的上下文，相邻的日志上下文相同时syncMdc什么也不做
+                LogContext.swap(batch.context(i));
+                LogContext.syncMdc();
+                Throwable throwable = batch.throwable(i);
+                String message = buildMessage(batch.format(i), batch.argCount(i), batch.arg1(i), batch.arg2(i),
+                        batch.argArray(i), throwable, 0, 0L, 0L, threadPrefix, caller);
+                if (!metricsEnabled) {
+                    logToBackend(null, batch.level(i), message, throwable, LOG_BATCH_FQCN);
+                    continue;
+                }
+                long start = System.nanoTime();
+                try {
+                    logToBackend(null, batch.level(i), message, throwable, LOG_BATCH_FQCN);
+                } finally {
+                    metrics().record(batch.level(i), message == null ? 0 : message.length(),
+                            System.nanoTime() - start);
+                }
+            }
+        } finally {
+            LogContext.swap(previous);
+            LogContext.syncMdc();
+        }
+    }
+
+    private void writeToSink(LogSink sink, int level, String format, int argCount, Object arg1, Object arg2,
+                             Object[] argArray, Throwable throwable, int primitiveTypes, long prim1, long prim2,
+                             String threadPrefix, StackTraceElement caller) {
+        long now = System.currentTimeMillis();
+        if (threadPrefix == null) {
+            // 结构化日志在LocationAwareLogger上不带线程前缀
+            threadPrefix = threadPrefix();
+        }
+        if (!LogMetrics.enabled()) {
+            sink.write(getName(), level, now, threadPrefix, caller, format, argCount, arg1, arg2, argArray, throwable,
+                    primitiveTypes, prim1, prim2);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            sink.write(getName(), level, now, threadPrefix, caller, format, argCount, arg1, arg2, argArray, throwable,
+                    primitiveTypes, prim1, prim2);
+        } finally {
+            metrics().record(level, LogMetrics.NOT_FORMATTED, System.nanoTime() - start);
+        }
+    }
+
+    private LogMetrics.LoggerMetrics metrics() {
+        LogMetrics.LoggerMetrics m = metrics;
+        if (m == null) {
+            m = LogMetrics.forLogger(getName());
+            metrics = m;
+        }
+        return m;
+    }
+
+    private void logToBackend(Marker marker, int level, String message, Throwable throwable, String callerFqcn) {
+        if (this.locationAwareLogger != null) {
+            this.locationAwareLogger.log(marker, callerFqcn, level, message, null, throwable);
+            return;
+        }
+        switch (level) {
+            case LocationAwareLogger.TRACE_INT:
+                if (marker == null) {
+                    this.internalSlf4jLogger.trace(message, throwable);
+                } else {
+                    this.internalSlf4jLogger.trace(marker, message, throwable);
+                }
+                break;
+            case LocationAwareLogger.DEBUG_INT:
+                if (marker == null) {
+                    this.internalSlf4jLogger.debug(message, throwable);
+                } else {
+                    this.internalSlf4jLogger.debug(marker, message, throwable);
+                }
+                break;
+            case LocationAwareLogger.INFO_INT:
+                if (marker == null) {
+                    this.internalSlf4jLogger.info(message, throwable);
+                } else {
+                    this.internalSlf4jLogger.info(marker, message, throwable);
+                }
+                break;
+            case LocationAwareLogger.WARN_INT:
+                if (marker == null) {
+                    this.internalSlf4jLogger.warn(message, throwable);
+                } else {
+                    this.internalSlf4jLogger.warn(marker, message, throwable);
+                }
+                break;
+            default:
+                if (marker == null) {
+                    this.internalSlf4jLogger.error(message, throwable);
+                } else {
+                    this.internalSlf4jLogger.error(marker, message, throwable);
+                }
+                break;
+        }
+    }
+
+    private static void appendPrefix(StringBuilder buf, String threadPrefix, StackTraceElement caller) {
+        buf.append(threadPrefix).append('[');
+        appendCaller(buf, caller);
+        buf.append("]-");
     }
 
-    private String reformat(String msgOrFormat) {
-        if (locationAwareLogger != null) {
-            return removeLine ? removeLineFeed(msgOrFormat) : msgOrFormat;
+    /**
+     * 调用位置的文本："类名.方法名(行号)"，caller为null时什么也不追加
+     */
+    static void appendCaller(StringBuilder buf, StackTraceElement caller) {
+        if (caller != null) {
+            buf.append(caller.getClassName())
+                    .append('.').append(caller.getMethodName())
+                    .append('(').append(caller.getLineNumber()).append(')');
         }
-        StackTraceElement[] stackTraceElements = Thread.currentThread()
-                .getStackTrace();
-        String classMethodLine = "";
-        String threadName = Thread.currentThread().getName();
-        long threadId = Thread.currentThread().getId();
-        if (stackTraceElements.length >= 4) {
-            classMethodLine = stackTraceElements[3].getClassName()
-                    + "." + stackTraceElements[3].getMethodName()
-                    + "(" + stackTraceElements[3].getLineNumber() + ")";
+    }
+
+    /**
+     * 在级别判断通过后、进入异步缓冲区之前求值，保证supplier只被调用一次
+     */
+    private static Object evaluate(Supplier<?> supplier) {
+        if (supplier == null) {
+            return null;
         }
-        String logPrefix = "[" + threadName + " " + threadId + "]-" + "["
-                + classMethodLine + "]-";
-        return logPrefix + (removeLine ? removeLineFeed(msgOrFormat) : msgOrFormat);
+        try {
+            return supplier.get();
+        } catch (Throwable e) {
+            Util.report("MyLogger: failed to evaluate log argument supplier", e);
+            return "[FAILED get()]";
+        }
+    }
+
+    private static String evaluateMessage(Supplier<String> msgSupplier) {
+        Object message = evaluate(msgSupplier);
+        return message == null ? null : message.toString();
+    }
+
+    /**
+     * @return 当前线程的"[线程名 线程id]-"，线程改名之前一直复用同一个字符串
+     */
+    private static String threadPrefix() {
+        Thread thread = Thread.currentThread();
+        String name = thread.getName();
+        ThreadPrefix cached = threadPrefixes.get();
+        if (!name.equals(cached.threadName)) {
+            cached.threadName = name;
+            cached.prefix = "[" + name + " " + thread.getId() + "]-";
+        }
+        return cached.prefix;
     }
 
     /**
@@ -96,12 +663,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void trace(String msg) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.TRACE_INT, msg, null, null);
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
             return;
         }
-        this.internalSlf4jLogger.trace(msg);
+        logInternal(null, LocationAwareLogger.TRACE_INT, msg, 0, null, null, null, null);
     }
 
     /**
@@ -119,13 +684,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void trace(String format, Object arg) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.TRACE_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
             return;
         }
-        this.internalSlf4jLogger.trace(format, arg);
+        logInternal(null, LocationAwareLogger.TRACE_INT, format, 1, arg, null, null, null);
     }
 
     /**
@@ -144,13 +706,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void trace(String format, Object arg1, Object arg2) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.TRACE_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
             return;
         }
-        this.internalSlf4jLogger.trace(format, arg1, arg2);
+        logInternal(null, LocationAwareLogger.TRACE_INT, format, 2, arg1, arg2, null, null);
     }
 
     /**
@@ -168,13 +727,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void trace(String format, Object[] argArray) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.arrayFormat(format, argArray);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.TRACE_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
             return;
         }
-        this.internalSlf4jLogger.trace(format, argArray);
+        logInternal(null, LocationAwareLogger.TRACE_INT, format, ARG_ARRAY, null, null, argArray, null);
     }
 
     /**
@@ -187,12 +743,134 @@ public class MyLogger implements Logger {
      */
     @Override
     public void trace(String msg, Throwable t) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.TRACE_INT, msg, null, t);
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.TRACE_INT, msg, 0, null, null, null, t);
+    }
+
+    /**
+     * Log a message at the TRACE level according to the specified format
+     * and a long argument, without boxing the argument. The primitive
+     * overloads use their own names so that boxed, char and float arguments
+     * still resolve to {@link #trace(String, Object)} as before.
+     *
+     * @param format the format string
+     * @param arg    the argument
+     */
+    public void traceLong(String format, long arg) {
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.TRACE_INT, format, 1, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_LONG, LogFormatter.ARG_OBJECT), arg, 0L);
+    }
+
+    /**
+     * Log a message at the TRACE level according to the specified format
+     * and a double argument, without boxing the argument.
+     *
+     * @param format the format string
+     * @param arg    the argument
+     */
+    public void traceDouble(String format, double arg) {
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
             return;
         }
-        this.internalSlf4jLogger.trace(msg, t);
+        logInternal(null, LocationAwareLogger.TRACE_INT, format, 1, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_DOUBLE, LogFormatter.ARG_OBJECT),
+                Double.doubleToRawLongBits(arg), 0L);
+    }
+
+    /**
+     * Log a message at the TRACE level according to the specified format,
+     * an object argument and a long argument, without boxing the long.
+     *
+     * @param format the format string
+     * @param arg1   the first argument
+     * @param arg2   the second argument
+     */
+    public void traceLong(String format, Object arg1, long arg2) {
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.TRACE_INT, format, 2, arg1, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_OBJECT, LogFormatter.ARG_LONG), 0L, arg2);
+    }
+
+    /**
+     * Log a message at the TRACE level according to the specified format
+     * and two long arguments, without boxing them.
+     *
+     * @param format the format string
+     * @param arg1   the first argument
+     * @param arg2   the second argument
+     */
+    public void traceLong(String format, long arg1, long arg2) {
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.TRACE_INT, format, 2, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_LONG, LogFormatter.ARG_LONG), arg1, arg2);
+    }
+
+    /**
+     * Log a message supplied by msgSupplier at the TRACE level. The supplier
+     * is called only if the logger is enabled for the TRACE level.
+     *
+     * @param msgSupplier supplies the message string to be logged
+     */
+    public void trace(Supplier<String> msgSupplier) {
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.TRACE_INT, evaluateMessage(msgSupplier), 0, null, null, null, null);
+    }
+
+    /**
+     * Log an exception (throwable) at the TRACE level with an accompanying
+     * message supplied by msgSupplier, which is called only if the logger is
+     * enabled for the TRACE level.
+     *
+     * @param msgSupplier supplies the message accompanying the exception
+     * @param t           the exception (throwable) to log
+     */
+    public void trace(Supplier<String> msgSupplier, Throwable t) {
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.TRACE_INT, evaluateMessage(msgSupplier), 0, null, null, null, t);
+    }
+
+    /**
+     * Log a message at the TRACE level according to the specified format
+     * and a lazily computed argument. The supplier is called at most once,
+     * and only if the logger is enabled for the TRACE level.
+     *
+     * @param format      the format string
+     * @param argSupplier supplies the argument
+     */
+    public void trace(String format, Supplier<?> argSupplier) {
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.TRACE_INT, format, 1, evaluate(argSupplier), null, null, null);
+    }
+
+    /**
+     * Log a message at the TRACE level according to the specified format
+     * and two lazily computed arguments. Each supplier is called at most once,
+     * and only if the logger is enabled for the TRACE level.
+     *
+     * @param format       the format string
+     * @param arg1Supplier supplies the first argument
+     * @param arg2Supplier supplies the second argument
+     */
+    public void trace(String format, Supplier<?> arg1Supplier, Supplier<?> arg2Supplier) {
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.TRACE_INT, format, 2, evaluate(arg1Supplier), evaluate(arg2Supplier), null, null);
     }
 
     /**
@@ -204,7 +882,8 @@ public class MyLogger implements Logger {
      */
     @Override
     public boolean isTraceEnabled(Marker marker) {
-        return this.internalSlf4jLogger.isTraceEnabled(marker);
+        // 与带Marker的日志方法使用同样的判断，Marker由后端输出时处理
+        return isLevelEnabled(LocationAwareLogger.TRACE_INT);
     }
 
     /**
@@ -216,12 +895,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void trace(Marker marker, String msg) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.TRACE_INT, msg, null, null);
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
             return;
         }
-        this.internalSlf4jLogger.trace(marker, msg);
+        logInternal(marker, LocationAwareLogger.TRACE_INT, msg, 0, null, null, null, null);
     }
 
     /**
@@ -236,13 +913,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void trace(Marker marker, String format, Object arg) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.TRACE_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
             return;
         }
-        this.internalSlf4jLogger.trace(marker, format, arg);
+        logInternal(marker, LocationAwareLogger.TRACE_INT, format, 1, arg, null, null, null);
     }
 
     /**
@@ -258,13 +932,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void trace(Marker marker, String format, Object arg1, Object arg2) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.TRACE_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
             return;
         }
-        this.internalSlf4jLogger.trace(marker, format, arg2);
+        logInternal(marker, LocationAwareLogger.TRACE_INT, format, 2, arg1, arg2, null, null);
     }
 
     /**
@@ -279,13 +950,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void trace(Marker marker, String format, Object[] argArray) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.arrayFormat(format, argArray);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.TRACE_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
             return;
         }
-        this.internalSlf4jLogger.trace(marker, format, argArray);
+        logInternal(marker, LocationAwareLogger.TRACE_INT, format, ARG_ARRAY, null, null, argArray, null);
     }
 
     /**
@@ -300,12 +968,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void trace(Marker marker, String msg, Throwable t) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.TRACE_INT, msg, null, t);
+        if (!isLevelEnabled(LocationAwareLogger.TRACE_INT)) {
             return;
         }
-        this.internalSlf4jLogger.trace(marker, msg, t);
+        logInternal(marker, LocationAwareLogger.TRACE_INT, msg, 0, null, null, null, t);
     }
 
     /**
@@ -316,7 +982,7 @@ public class MyLogger implements Logger {
      */
     @Override
     public boolean isDebugEnabled() {
-        return this.internalSlf4jLogger.isDebugEnabled();
+        return isLevelEnabled(LocationAwareLogger.DEBUG_INT);
     }
 
     /**
@@ -326,12 +992,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void debug(String msg) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.DEBUG_INT, msg, null, null);
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
             return;
         }
-        this.internalSlf4jLogger.debug(msg);
+        logInternal(null, LocationAwareLogger.DEBUG_INT, msg, 0, null, null, null, null);
     }
 
     /**
@@ -348,13 +1012,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void debug(String format, Object arg) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.DEBUG_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
             return;
         }
-        this.internalSlf4jLogger.debug(format, arg);
+        logInternal(null, LocationAwareLogger.DEBUG_INT, format, 1, arg, null, null, null);
     }
 
     /**
@@ -372,13 +1033,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void debug(String format, Object arg1, Object arg2) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.DEBUG_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
             return;
         }
-        this.internalSlf4jLogger.debug(format, arg1, arg2);
+        logInternal(null, LocationAwareLogger.DEBUG_INT, format, 2, arg1, arg2, null, null);
     }
 
     /**
@@ -395,30 +1053,149 @@ public class MyLogger implements Logger {
      */
     @Override
     public void debug(String format, Object[] argArray) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.arrayFormat(format, argArray);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.DEBUG_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
             return;
         }
-        this.internalSlf4jLogger.debug(format, argArray);
+        logInternal(null, LocationAwareLogger.DEBUG_INT, format, ARG_ARRAY, null, null, argArray, null);
     }
 
     /**
      * Log an exception (throwable) at the DEBUG level with an
      * accompanying message.
      *
-     * @param msg the message accompanying the exception
-     * @param t   the exception (throwable) to log
+     * @param msg the message accompanying the exception
+     * @param t   the exception (throwable) to log
+     */
+    @Override
+    public void debug(String msg, Throwable t) {
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.DEBUG_INT, msg, 0, null, null, null, t);
+    }
+
+    /**
+     * Log a message at the DEBUG level according to the specified format
+     * and a long argument, without boxing the argument. The primitive
+     * overloads use their own names so that boxed, char and float arguments
+     * still resolve to {@link #debug(String, Object)} as before.
+     *
+     * @param format the format string
+     * @param arg    the argument
+     */
+    public void debugLong(String format, long arg) {
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.DEBUG_INT, format, 1, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_LONG, LogFormatter.ARG_OBJECT), arg, 0L);
+    }
+
+    /**
+     * Log a message at the DEBUG level according to the specified format
+     * and a double argument, without boxing the argument.
+     *
+     * @param format the format string
+     * @param arg    the argument
+     */
+    public void debugDouble(String format, double arg) {
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.DEBUG_INT, format, 1, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_DOUBLE, LogFormatter.ARG_OBJECT),
+                Double.doubleToRawLongBits(arg), 0L);
+    }
+
+    /**
+     * Log a message at the DEBUG level according to the specified format,
+     * an object argument and a long argument, without boxing the long.
+     *
+     * @param format the format string
+     * @param arg1   the first argument
+     * @param arg2   the second argument
+     */
+    public void debugLong(String format, Object arg1, long arg2) {
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.DEBUG_INT, format, 2, arg1, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_OBJECT, LogFormatter.ARG_LONG), 0L, arg2);
+    }
+
+    /**
+     * Log a message at the DEBUG level according to the specified format
+     * and two long arguments, without boxing them.
+     *
+     * @param format the format string
+     * @param arg1   the first argument
+     * @param arg2   the second argument
+     */
+    public void debugLong(String format, long arg1, long arg2) {
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.DEBUG_INT, format, 2, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_LONG, LogFormatter.ARG_LONG), arg1, arg2);
+    }
+
+    /**
+     * Log a message supplied by msgSupplier at the DEBUG level. The supplier
+     * is called only if the logger is enabled for the DEBUG level.
+     *
+     * @param msgSupplier supplies the message string to be logged
+     */
+    public void debug(Supplier<String> msgSupplier) {
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.DEBUG_INT, evaluateMessage(msgSupplier), 0, null, null, null, null);
+    }
+
+    /**
+     * Log an exception (throwable) at the DEBUG level with an accompanying
+     * message supplied by msgSupplier, which is called only if the logger is
+     * enabled for the DEBUG level.
+     *
+     * @param msgSupplier supplies the message accompanying the exception
+     * @param t           the exception (throwable) to log
+     */
+    public void debug(Supplier<String> msgSupplier, Throwable t) {
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.DEBUG_INT, evaluateMessage(msgSupplier), 0, null, null, null, t);
+    }
+
+    /**
+     * Log a message at the DEBUG level according to the specified format
+     * and a lazily computed argument. The supplier is called at most once,
+     * and only if the logger is enabled for the DEBUG level.
+     *
+     * @param format      the format string
+     * @param argSupplier supplies the argument
+     */
+    public void debug(String format, Supplier<?> argSupplier) {
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.DEBUG_INT, format, 1, evaluate(argSupplier), null, null, null);
+    }
+
+    /**
+     * Log a message at the DEBUG level according to the specified format
+     * and two lazily computed arguments. Each supplier is called at most once,
+     * and only if the logger is enabled for the DEBUG level.
+     *
+     * @param format       the format string
+     * @param arg1Supplier supplies the first argument
+     * @param arg2Supplier supplies the second argument
      */
-    @Override
-    public void debug(String msg, Throwable t) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.DEBUG_INT, msg, null, t);
+    public void debug(String format, Supplier<?> arg1Supplier, Supplier<?> arg2Supplier) {
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
             return;
         }
-        this.internalSlf4jLogger.debug(msg, t);
+        logInternal(null, LocationAwareLogger.DEBUG_INT, format, 2, evaluate(arg1Supplier), evaluate(arg2Supplier), null, null);
     }
 
     /**
@@ -429,7 +1206,7 @@ public class MyLogger implements Logger {
      */
     @Override
     public boolean isDebugEnabled(Marker marker) {
-        return this.internalSlf4jLogger.isDebugEnabled(marker);
+        return isLevelEnabled(LocationAwareLogger.DEBUG_INT);
     }
 
     /**
@@ -440,12 +1217,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void debug(Marker marker, String msg) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.DEBUG_INT, msg, null, null);
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
             return;
         }
-        this.internalSlf4jLogger.debug(marker, msg);
+        logInternal(marker, LocationAwareLogger.DEBUG_INT, msg, 0, null, null, null, null);
     }
 
     /**
@@ -459,13 +1234,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void debug(Marker marker, String format, Object arg) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.DEBUG_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
             return;
         }
-        this.internalSlf4jLogger.debug(marker, format, arg);
+        logInternal(marker, LocationAwareLogger.DEBUG_INT, format, 1, arg, null, null, null);
     }
 
     /**
@@ -480,13 +1252,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void debug(Marker marker, String format, Object arg1, Object arg2) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.DEBUG_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
             return;
         }
-        this.internalSlf4jLogger.debug(marker, format, arg1, arg2);
+        logInternal(marker, LocationAwareLogger.DEBUG_INT, format, 2, arg1, arg2, null, null);
     }
 
     /**
@@ -500,13 +1269,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void debug(Marker marker, String format, Object[] argArray) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.arrayFormat(format, argArray);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.DEBUG_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
             return;
         }
-        this.internalSlf4jLogger.debug(marker, format, argArray);
+        logInternal(marker, LocationAwareLogger.DEBUG_INT, format, ARG_ARRAY, null, null, argArray, null);
     }
 
     /**
@@ -520,12 +1286,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void debug(Marker marker, String msg, Throwable t) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.DEBUG_INT, msg, null, t);
+        if (!isLevelEnabled(LocationAwareLogger.DEBUG_INT)) {
             return;
         }
-        this.internalSlf4jLogger.debug(marker, msg, t);
+        logInternal(marker, LocationAwareLogger.DEBUG_INT, msg, 0, null, null, null, t);
     }
 
     /**
@@ -536,7 +1300,7 @@ public class MyLogger implements Logger {
      */
     @Override
     public boolean isInfoEnabled() {
-        return this.internalSlf4jLogger.isInfoEnabled();
+        return isLevelEnabled(LocationAwareLogger.INFO_INT);
     }
 
     /**
@@ -546,12 +1310,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void info(String msg) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.INFO_INT, msg, null, null);
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
             return;
         }
-        this.internalSlf4jLogger.info(msg);
+        logInternal(null, LocationAwareLogger.INFO_INT, msg, 0, null, null, null, null);
     }
 
     /**
@@ -568,13 +1330,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void info(String format, Object arg) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.INFO_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
             return;
         }
-        this.internalSlf4jLogger.info(format, arg);
+        logInternal(null, LocationAwareLogger.INFO_INT, format, 1, arg, null, null, null);
     }
 
     /**
@@ -592,13 +1351,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void info(String format, Object arg1, Object arg2) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.INFO_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
             return;
         }
-        this.internalSlf4jLogger.info(format, arg1, arg2);
+        logInternal(null, LocationAwareLogger.INFO_INT, format, 2, arg1, arg2, null, null);
     }
 
     /**
@@ -615,13 +1371,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void info(String format, Object[] argArray) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.arrayFormat(format, argArray);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.INFO_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
             return;
         }
-        this.internalSlf4jLogger.info(format, argArray);
+        logInternal(null, LocationAwareLogger.INFO_INT, format, ARG_ARRAY, null, null, argArray, null);
     }
 
     /**
@@ -633,12 +1386,134 @@ public class MyLogger implements Logger {
      */
     @Override
     public void info(String msg, Throwable t) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.INFO_INT, msg, null, t);
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.INFO_INT, msg, 0, null, null, null, t);
+    }
+
+    /**
+     * Log a message at the INFO level according to the specified format
+     * and a long argument, without boxing the argument. The primitive
+     * overloads use their own names so that boxed, char and float arguments
+     * still resolve to {@link #info(String, Object)} as before.
+     *
+     * @param format the format string
+     * @param arg    the argument
+     */
+    public void infoLong(String format, long arg) {
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.INFO_INT, format, 1, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_LONG, LogFormatter.ARG_OBJECT), arg, 0L);
+    }
+
+    /**
+     * Log a message at the INFO level according to the specified format
+     * and a double argument, without boxing the argument.
+     *
+     * @param format the format string
+     * @param arg    the argument
+     */
+    public void infoDouble(String format, double arg) {
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.INFO_INT, format, 1, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_DOUBLE, LogFormatter.ARG_OBJECT),
+                Double.doubleToRawLongBits(arg), 0L);
+    }
+
+    /**
+     * Log a message at the INFO level according to the specified format,
+     * an object argument and a long argument, without boxing the long.
+     *
+     * @param format the format string
+     * @param arg1   the first argument
+     * @param arg2   the second argument
+     */
+    public void infoLong(String format, Object arg1, long arg2) {
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.INFO_INT, format, 2, arg1, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_OBJECT, LogFormatter.ARG_LONG), 0L, arg2);
+    }
+
+    /**
+     * Log a message at the INFO level according to the specified format
+     * and two long arguments, without boxing them.
+     *
+     * @param format the format string
+     * @param arg1   the first argument
+     * @param arg2   the second argument
+     */
+    public void infoLong(String format, long arg1, long arg2) {
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.INFO_INT, format, 2, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_LONG, LogFormatter.ARG_LONG), arg1, arg2);
+    }
+
+    /**
+     * Log a message supplied by msgSupplier at the INFO level. The supplier
+     * is called only if the logger is enabled for the INFO level.
+     *
+     * @param msgSupplier supplies the message string to be logged
+     */
+    public void info(Supplier<String> msgSupplier) {
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
             return;
         }
-        this.internalSlf4jLogger.info(msg, t);
+        logInternal(null, LocationAwareLogger.INFO_INT, evaluateMessage(msgSupplier), 0, null, null, null, null);
+    }
+
+    /**
+     * Log an exception (throwable) at the INFO level with an accompanying
+     * message supplied by msgSupplier, which is called only if the logger is
+     * enabled for the INFO level.
+     *
+     * @param msgSupplier supplies the message accompanying the exception
+     * @param t           the exception (throwable) to log
+     */
+    public void info(Supplier<String> msgSupplier, Throwable t) {
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.INFO_INT, evaluateMessage(msgSupplier), 0, null, null, null, t);
+    }
+
+    /**
+     * Log a message at the INFO level according to the specified format
+     * and a lazily computed argument. The supplier is called at most once,
+     * and only if the logger is enabled for the INFO level.
+     *
+     * @param format      the format string
+     * @param argSupplier supplies the argument
+     */
+    public void info(String format, Supplier<?> argSupplier) {
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.INFO_INT, format, 1, evaluate(argSupplier), null, null, null);
+    }
+
+    /**
+     * Log a message at the INFO level according to the specified format
+     * and two lazily computed arguments. Each supplier is called at most once,
+     * and only if the logger is enabled for the INFO level.
+     *
+     * @param format       the format string
+     * @param arg1Supplier supplies the first argument
+     * @param arg2Supplier supplies the second argument
+     */
+    public void info(String format, Supplier<?> arg1Supplier, Supplier<?> arg2Supplier) {
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.INFO_INT, format, 2, evaluate(arg1Supplier), evaluate(arg2Supplier), null, null);
     }
 
     /**
@@ -649,7 +1524,7 @@ public class MyLogger implements Logger {
      */
     @Override
     public boolean isInfoEnabled(Marker marker) {
-        return this.internalSlf4jLogger.isInfoEnabled(marker);
+        return isLevelEnabled(LocationAwareLogger.INFO_INT);
     }
 
     /**
@@ -660,12 +1535,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void info(Marker marker, String msg) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.INFO_INT, msg, null, null);
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
             return;
         }
-        this.internalSlf4jLogger.info(marker, msg);
+        logInternal(marker, LocationAwareLogger.INFO_INT, msg, 0, null, null, null, null);
     }
 
     /**
@@ -679,13 +1552,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void info(Marker marker, String format, Object arg) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.INFO_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
             return;
         }
-        this.internalSlf4jLogger.info(marker, format, arg);
+        logInternal(marker, LocationAwareLogger.INFO_INT, format, 1, arg, null, null, null);
     }
 
     /**
@@ -700,13 +1570,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void info(Marker marker, String format, Object arg1, Object arg2) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.INFO_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
             return;
         }
-        this.internalSlf4jLogger.info(marker, format, arg1, arg2);
+        logInternal(marker, LocationAwareLogger.INFO_INT, format, 2, arg1, arg2, null, null);
     }
 
     /**
@@ -720,13 +1587,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void info(Marker marker, String format, Object[] argArray) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.arrayFormat(format, argArray);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.INFO_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
             return;
         }
-        this.internalSlf4jLogger.info(marker, format, argArray);
+        logInternal(marker, LocationAwareLogger.INFO_INT, format, ARG_ARRAY, null, null, argArray, null);
     }
 
     /**
@@ -739,12 +1603,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void info(Marker marker, String msg, Throwable t) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.INFO_INT, msg, null, t);
+        if (!isLevelEnabled(LocationAwareLogger.INFO_INT)) {
             return;
         }
-        this.internalSlf4jLogger.info(marker, msg, t);
+        logInternal(marker, LocationAwareLogger.INFO_INT, msg, 0, null, null, null, t);
     }
 
     /**
@@ -755,7 +1617,7 @@ public class MyLogger implements Logger {
      */
     @Override
     public boolean isWarnEnabled() {
-        return this.internalSlf4jLogger.isWarnEnabled();
+        return isLevelEnabled(LocationAwareLogger.WARN_INT);
     }
 
     /**
@@ -765,12 +1627,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void warn(String msg) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.WARN_INT, msg, null, null);
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
             return;
         }
-        this.internalSlf4jLogger.warn(msg);
+        logInternal(null, LocationAwareLogger.WARN_INT, msg, 0, null, null, null, null);
     }
 
     /**
@@ -787,13 +1647,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void warn(String format, Object arg) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.WARN_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
             return;
         }
-        this.internalSlf4jLogger.warn(format, arg);
+        logInternal(null, LocationAwareLogger.WARN_INT, format, 1, arg, null, null, null);
     }
 
     /**
@@ -810,13 +1667,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void warn(String format, Object[] argArray) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.arrayFormat(format, argArray);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.WARN_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
             return;
         }
-        this.internalSlf4jLogger.warn(format, argArray);
+        logInternal(null, LocationAwareLogger.WARN_INT, format, ARG_ARRAY, null, null, argArray, null);
     }
 
     /**
@@ -834,13 +1688,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void warn(String format, Object arg1, Object arg2) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.WARN_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
             return;
         }
-        this.internalSlf4jLogger.warn(format, arg1, arg2);
+        logInternal(null, LocationAwareLogger.WARN_INT, format, 2, arg1, arg2, null, null);
     }
 
     /**
@@ -852,12 +1703,134 @@ public class MyLogger implements Logger {
      */
     @Override
     public void warn(String msg, Throwable t) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.WARN_INT, msg, null, t);
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.WARN_INT, msg, 0, null, null, null, t);
+    }
+
+    /**
+     * Log a message at the WARN level according to the specified format
+     * and a long argument, without boxing the argument. The primitive
+     * overloads use their own names so that boxed, char and float arguments
+     * still resolve to {@link #warn(String, Object)} as before.
+     *
+     * @param format the format string
+     * @param arg    the argument
+     */
+    public void warnLong(String format, long arg) {
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.WARN_INT, format, 1, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_LONG, LogFormatter.ARG_OBJECT), arg, 0L);
+    }
+
+    /**
+     * Log a message at the WARN level according to the specified format
+     * and a double argument, without boxing the argument.
+     *
+     * @param format the format string
+     * @param arg    the argument
+     */
+    public void warnDouble(String format, double arg) {
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.WARN_INT, format, 1, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_DOUBLE, LogFormatter.ARG_OBJECT),
+                Double.doubleToRawLongBits(arg), 0L);
+    }
+
+    /**
+     * Log a message at the WARN level according to the specified format,
+     * an object argument and a long argument, without boxing the long.
+     *
+     * @param format the format string
+     * @param arg1   the first argument
+     * @param arg2   the second argument
+     */
+    public void warnLong(String format, Object arg1, long arg2) {
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.WARN_INT, format, 2, arg1, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_OBJECT, LogFormatter.ARG_LONG), 0L, arg2);
+    }
+
+    /**
+     * Log a message at the WARN level according to the specified format
+     * and two long arguments, without boxing them.
+     *
+     * @param format the format string
+     * @param arg1   the first argument
+     * @param arg2   the second argument
+     */
+    public void warnLong(String format, long arg1, long arg2) {
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.WARN_INT, format, 2, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_LONG, LogFormatter.ARG_LONG), arg1, arg2);
+    }
+
+    /**
+     * Log a message supplied by msgSupplier at the WARN level. The supplier
+     * is called only if the logger is enabled for the WARN level.
+     *
+     * @param msgSupplier supplies the message string to be logged
+     */
+    public void warn(Supplier<String> msgSupplier) {
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.WARN_INT, evaluateMessage(msgSupplier), 0, null, null, null, null);
+    }
+
+    /**
+     * Log an exception (throwable) at the WARN level with an accompanying
+     * message supplied by msgSupplier, which is called only if the logger is
+     * enabled for the WARN level.
+     *
+     * @param msgSupplier supplies the message accompanying the exception
+     * @param t           the exception (throwable) to log
+     */
+    public void warn(Supplier<String> msgSupplier, Throwable t) {
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.WARN_INT, evaluateMessage(msgSupplier), 0, null, null, null, t);
+    }
+
+    /**
+     * Log a message at the WARN level according to the specified format
+     * and a lazily computed argument. The supplier is called at most once,
+     * and only if the logger is enabled for the WARN level.
+     *
+     * @param format      the format string
+     * @param argSupplier supplies the argument
+     */
+    public void warn(String format, Supplier<?> argSupplier) {
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
             return;
         }
-        this.internalSlf4jLogger.warn(msg, t);
+        logInternal(null, LocationAwareLogger.WARN_INT, format, 1, evaluate(argSupplier), null, null, null);
+    }
+
+    /**
+     * Log a message at the WARN level according to the specified format
+     * and two lazily computed arguments. Each supplier is called at most once,
+     * and only if the logger is enabled for the WARN level.
+     *
+     * @param format       the format string
+     * @param arg1Supplier supplies the first argument
+     * @param arg2Supplier supplies the second argument
+     */
+    public void warn(String format, Supplier<?> arg1Supplier, Supplier<?> arg2Supplier) {
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.WARN_INT, format, 2, evaluate(arg1Supplier), evaluate(arg2Supplier), null, null);
     }
 
     /**
@@ -868,7 +1841,7 @@ public class MyLogger implements Logger {
      */
     @Override
     public boolean isWarnEnabled(Marker marker) {
-        return this.internalSlf4jLogger.isWarnEnabled(marker);
+        return isLevelEnabled(LocationAwareLogger.WARN_INT);
     }
 
     /**
@@ -879,12 +1852,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void warn(Marker marker, String msg) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.WARN_INT, msg, null, null);
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
             return;
         }
-        this.internalSlf4jLogger.warn(marker, msg);
+        logInternal(marker, LocationAwareLogger.WARN_INT, msg, 0, null, null, null, null);
     }
 
     /**
@@ -898,13 +1869,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void warn(Marker marker, String format, Object arg) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.WARN_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
             return;
         }
-        this.internalSlf4jLogger.warn(marker, format, arg);
+        logInternal(marker, LocationAwareLogger.WARN_INT, format, 1, arg, null, null, null);
     }
 
     /**
@@ -919,13 +1887,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void warn(Marker marker, String format, Object arg1, Object arg2) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.WARN_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
             return;
         }
-        this.internalSlf4jLogger.warn(marker, format, arg1, arg2);
+        logInternal(marker, LocationAwareLogger.WARN_INT, format, 2, arg1, arg2, null, null);
     }
 
     /**
@@ -939,13 +1904,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void warn(Marker marker, String format, Object[] argArray) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.arrayFormat(format, argArray);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.WARN_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
             return;
         }
-        this.internalSlf4jLogger.warn(marker, format, argArray);
+        logInternal(marker, LocationAwareLogger.WARN_INT, format, ARG_ARRAY, null, null, argArray, null);
     }
 
     /**
@@ -958,12 +1920,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void warn(Marker marker, String msg, Throwable t) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.WARN_INT, msg, null, t);
+        if (!isLevelEnabled(LocationAwareLogger.WARN_INT)) {
             return;
         }
-        this.internalSlf4jLogger.warn(marker, msg, t);
+        logInternal(marker, LocationAwareLogger.WARN_INT, msg, 0, null, null, null, t);
     }
 
     /**
@@ -974,7 +1934,7 @@ public class MyLogger implements Logger {
      */
     @Override
     public boolean isErrorEnabled() {
-        return this.internalSlf4jLogger.isErrorEnabled();
+        return isLevelEnabled(LocationAwareLogger.ERROR_INT);
     }
 
     /**
@@ -984,12 +1944,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void error(String msg) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.ERROR_INT, msg, null, null);
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
             return;
         }
-        this.internalSlf4jLogger.error(msg);
+        logInternal(null, LocationAwareLogger.ERROR_INT, msg, 0, null, null, null, null);
     }
 
     /**
@@ -1006,13 +1964,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void error(String format, Object arg) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.ERROR_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
             return;
         }
-        this.internalSlf4jLogger.error(format, arg);
+        logInternal(null, LocationAwareLogger.ERROR_INT, format, 1, arg, null, null, null);
     }
 
     /**
@@ -1030,13 +1985,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void error(String format, Object arg1, Object arg2) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.ERROR_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
             return;
         }
-        this.internalSlf4jLogger.error(format, arg1, arg2);
+        logInternal(null, LocationAwareLogger.ERROR_INT, format, 2, arg1, arg2, null, null);
     }
 
     /**
@@ -1053,13 +2005,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void error(String format, Object[] argArray) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.arrayFormat(format, argArray);
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.ERROR_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
             return;
         }
-        this.internalSlf4jLogger.error(format, argArray);
+        logInternal(null, LocationAwareLogger.ERROR_INT, format, ARG_ARRAY, null, null, argArray, null);
     }
 
     /**
@@ -1071,12 +2020,134 @@ public class MyLogger implements Logger {
      */
     @Override
     public void error(String msg, Throwable t) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(null, fqcn, LocationAwareLogger.ERROR_INT, msg, null, t);
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.ERROR_INT, msg, 0, null, null, null, t);
+    }
+
+    /**
+     * Log a message at the ERROR level according to the specified format
+     * and a long argument, without boxing the argument. The primitive
+     * overloads use their own names so that boxed, char and float arguments
+     * still resolve to {@link #error(String, Object)} as before.
+     *
+     * @param format the format string
+     * @param arg    the argument
+     */
+    public void errorLong(String format, long arg) {
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.ERROR_INT, format, 1, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_LONG, LogFormatter.ARG_OBJECT), arg, 0L);
+    }
+
+    /**
+     * Log a message at the ERROR level according to the specified format
+     * and a double argument, without boxing the argument.
+     *
+     * @param format the format string
+     * @param arg    the argument
+     */
+    public void errorDouble(String format, double arg) {
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.ERROR_INT, format, 1, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_DOUBLE, LogFormatter.ARG_OBJECT),
+                Double.doubleToRawLongBits(arg), 0L);
+    }
+
+    /**
+     * Log a message at the ERROR level according to the specified format,
+     * an object argument and a long argument, without boxing the long.
+     *
+     * @param format the format string
+     * @param arg1   the first argument
+     * @param arg2   the second argument
+     */
+    public void errorLong(String format, Object arg1, long arg2) {
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.ERROR_INT, format, 2, arg1, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_OBJECT, LogFormatter.ARG_LONG), 0L, arg2);
+    }
+
+    /**
+     * Log a message at the ERROR level according to the specified format
+     * and two long arguments, without boxing them.
+     *
+     * @param format the format string
+     * @param arg1   the first argument
+     * @param arg2   the second argument
+     */
+    public void errorLong(String format, long arg1, long arg2) {
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.ERROR_INT, format, 2, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_LONG, LogFormatter.ARG_LONG), arg1, arg2);
+    }
+
+    /**
+     * Log a message supplied by msgSupplier at the ERROR level. The supplier
+     * is called only if the logger is enabled for the ERROR level.
+     *
+     * @param msgSupplier supplies the message string to be logged
+     */
+    public void error(Supplier<String> msgSupplier) {
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.ERROR_INT, evaluateMessage(msgSupplier), 0, null, null, null, null);
+    }
+
+    /**
+     * Log an exception (throwable) at the ERROR level with an accompanying
+     * message supplied by msgSupplier, which is called only if the logger is
+     * enabled for the ERROR level.
+     *
+     * @param msgSupplier supplies the message accompanying the exception
+     * @param t           the exception (throwable) to log
+     */
+    public void error(Supplier<String> msgSupplier, Throwable t) {
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.ERROR_INT, evaluateMessage(msgSupplier), 0, null, null, null, t);
+    }
+
+    /**
+     * Log a message at the ERROR level according to the specified format
+     * and a lazily computed argument. The supplier is called at most once,
+     * and only if the logger is enabled for the ERROR level.
+     *
+     * @param format      the format string
+     * @param argSupplier supplies the argument
+     */
+    public void error(String format, Supplier<?> argSupplier) {
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
+            return;
+        }
+        logInternal(null, LocationAwareLogger.ERROR_INT, format, 1, evaluate(argSupplier), null, null, null);
+    }
+
+    /**
+     * Log a message at the ERROR level according to the specified format
+     * and two lazily computed arguments. Each supplier is called at most once,
+     * and only if the logger is enabled for the ERROR level.
+     *
+     * @param format       the format string
+     * @param arg1Supplier supplies the first argument
+     * @param arg2Supplier supplies the second argument
+     */
+    public void error(String format, Supplier<?> arg1Supplier, Supplier<?> arg2Supplier) {
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
             return;
         }
-        this.internalSlf4jLogger.error(msg, t);
+        logInternal(null, LocationAwareLogger.ERROR_INT, format, 2, evaluate(arg1Supplier), evaluate(arg2Supplier), null, null);
     }
 
     /**
@@ -1087,7 +2158,7 @@ public class MyLogger implements Logger {
      */
     @Override
     public boolean isErrorEnabled(Marker marker) {
-        return this.internalSlf4jLogger.isErrorEnabled(marker);
+        return isLevelEnabled(LocationAwareLogger.ERROR_INT);
     }
 
     /**
@@ -1098,12 +2169,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void error(Marker marker, String msg) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.ERROR_INT, msg, null, null);
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
             return;
         }
-        this.internalSlf4jLogger.error(marker, msg);
+        logInternal(marker, LocationAwareLogger.ERROR_INT, msg, 0, null, null, null, null);
     }
 
     /**
@@ -1117,13 +2186,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void error(Marker marker, String format, Object arg) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.ERROR_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
             return;
         }
-        this.internalSlf4jLogger.error(marker, format, arg);
+        logInternal(marker, LocationAwareLogger.ERROR_INT, format, 1, arg, null, null, null);
     }
 
     /**
@@ -1138,13 +2204,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void error(Marker marker, String format, Object arg1, Object arg2) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.ERROR_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
             return;
         }
-        this.internalSlf4jLogger.error(marker, format, arg1, arg2);
+        logInternal(marker, LocationAwareLogger.ERROR_INT, format, 2, arg1, arg2, null, null);
     }
 
     /**
@@ -1158,13 +2221,10 @@ public class MyLogger implements Logger {
      */
     @Override
     public void error(Marker marker, String format, Object[] argArray) {
-        format = reformat(format);
-        if (this.locationAwareLogger != null) {
-            FormattingTuple ft = MessageFormatter.arrayFormat(format, argArray);
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.ERROR_INT, ft.getMessage(), ft.getArgArray(), ft.getThrowable());
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
             return;
         }
-        this.internalSlf4jLogger.error(marker, format, argArray);
+        logInternal(marker, LocationAwareLogger.ERROR_INT, format, ARG_ARRAY, null, null, argArray, null);
     }
 
     /**
@@ -1178,11 +2238,14 @@ public class MyLogger implements Logger {
      */
     @Override
     public void error(Marker marker, String msg, Throwable t) {
-        msg = reformat(msg);
-        if (this.locationAwareLogger != null) {
-            this.locationAwareLogger.log(marker, fqcn, LocationAwareLogger.ERROR_INT, msg, null, t);
+        if (!isLevelEnabled(LocationAwareLogger.ERROR_INT)) {
             return;
         }
-        this.internalSlf4jLogger.error(marker, msg, t);
+        logInternal(marker, LocationAwareLogger.ERROR_INT, msg, 0, null, null, null, t);
+    }
+
+    private final static class ThreadPrefix {
+        String threadName;
+        String prefix;
     }
 }
@@ -1,37 +1,105 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
 public class MyLoggerFactory {
+    /**
+     * 缓存的logger数量上限，超过后不再缓存，每次新建
+     */
+    private final static int MAX_REGISTRY_SIZE = Integer.getInteger("mylogger.registry.maxSize", 10000);
+    /**
+     * fqcn -> (logger name -> MyLogger)，两级map避免每次查找都创建组合key
+     */
+    private final static ConcurrentHashMap<String, ConcurrentHashMap<String, MyLogger>> registry = new ConcurrentHashMap<>();
+    private final static AtomicInteger registrySize = new AtomicInteger();
+    private final static LongAdder registryHits = new LongAdder();
+    private final static LongAdder registryMisses = new LongAdder();
+    private final static CallerResolver callerResolver = new CallerResolver(MyLoggerFactory.class);
+
+    static {
+        Log4jConfUtil.autoConf();
+    }
 
     public static Logger getLogger(Class someclass) {
         if (someclass == null) {
             return getLogger();
         }
-        return new MyLogger(LoggerFactory.getLogger(someclass));
+        return getOrCreate(someclass.getName(), MyLogger.class);
     }
 
     public static Logger getLogger(String classname) {
         if (classname == null || classname.length() == 0) {
             return getLogger();
         }
-        return new MyLogger(LoggerFactory.getLogger(classname));
+        return getOrCreate(classname, MyLogger.class);
     }
 
     public static Logger getLogger() {
-        return new MyLogger(LoggerFactory.getLogger(getCallerClassName()));
+        return getOrCreate(getCallerClassName(), MyLogger.class);
     }
 
     private static String getCallerClassName() {
-        StackTraceElement[] stacks = Thread.currentThread().getStackTrace();
-        for (int i = stacks.length - 1; i >= 0; i--) {
-            if (stacks[i].getClassName().equals(MyLoggerFactory.class.getName())) {
-                int caller = i + 1;
-                if (caller < stacks.length) {
-                    return stacks[caller].getClassName();
-                }
+        String caller = callerResolver.getCallerClassName();
+        if (caller.equals(MyLoggerFactory.class.getName())) {
+            return MyLogger.class.getName();
+        }
+        return caller;
+    }
+
+    /**
+     * 同一个(logger name, fqcn)只创建一个MyLogger，之后的查找不加锁
+     */
+    private static MyLogger getOrCreate(String loggerName, Class<?> fqcn) {
+        ConcurrentHashMap<String, MyLogger> loggers = registry.get(fqcn.getName());
+        if (loggers != null) {
+            MyLogger logger = loggers.get(loggerName);
+            if (logger != null) {
+                registryHits.increment();
+                return logger;
+            }
+        }
+        registryMisses.increment();
+        MyLogger logger = new MyLogger(LoggerFactory.getLogger(loggerName), fqcn);
+        if (registrySize.get() >= MAX_REGISTRY_SIZE) {
+            return logger;
+        }
+        if (loggers == null) {
+            loggers = new ConcurrentHashMap<>();
+            ConcurrentHashMap<String, MyLogger> existing = registry.putIfAbsent(fqcn.getName(), loggers);
+            if (existing != null) {
+                loggers = existing;
             }
         }
-        return MyLogger.class.getName();
+        MyLogger existing = loggers.putIfAbsent(loggerName, logger);
+        if (existing != null) {
+            return existing;
+        }
+        registrySize.incrementAndGet();
+        return logger;
+    }
+
+    /**
+     * @return 已缓存的logger数量
+     */
+    public static int getRegistrySize() {
+        return registrySize.get();
+    }
+
+    /**
+     * @return 命中缓存的次数
+     */
+    public static long getRegistryHits() {
+        return registryHits.sum();
+    }
+
+    /**
+     * @return 未命中缓存(新建logger)的次数
+     */
+    public static long getRegistryMisses() {
+        return registryMisses.sum();
     }
 
     /**
@@ -41,7 +109,7 @@ public class MyLoggerFactory {
      * @return
      */
     public static Logger getLoggerForFullCaller(Class fqcn) {
-        return new MyLogger(LoggerFactory.getLogger(fqcn), fqcn);
+        return getOrCreate(fqcn.getName(), fqcn);
     }
 
     /**
@@ -51,7 +119,7 @@ public class MyLoggerFactory {
      * @return
      */
     public static Logger getLoggerForFullCaller(Class fqcn, String loggerName) {
-        return new MyLogger(LoggerFactory.getLogger(loggerName), fqcn);
+        return getOrCreate(loggerName, fqcn);
     }
 
 }
@@ -0,0 +1,133 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个调用点的限流策略：令牌桶(每秒permitsPerSecond条，允许burst条突发)或每N条采样1条
+ */
+public final class RateLimitPolicy {
+    private final double permitsPerSecond;
+    private final int burst;
+    private final int sampleRate;
+
+    private RateLimitPolicy(double permitsPerSecond, int burst, int sampleRate) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.sampleRate = sampleRate;
+    }
+
+    public static RateLimitPolicy tokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond: " + permitsPerSecond + ", burst: " + burst);
+        }
+        return new RateLimitPolicy(permitsPerSecond, burst, 0);
+    }
+
+    public static RateLimitPolicy sampleOneIn(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n: " + n);
+        }
+        return new RateLimitPolicy(0, 0, n);
+    }
+
+    /**
+     * 解析"100/s"、"100/s:200"(突发200条)或"1in10"
+     */
+    public static RateLimitPolicy parse(String spec) {
+        String s = spec.trim();
+        if (s.startsWith("1in")) {
+            return sampleOneIn(Integer.parseInt(s.substring(3).trim()));
+        }
+        int slash = s.indexOf("/s");
+        if (slash < 0) {
+            throw new IllegalArgumentException("bad rate limit: " + spec);
+        }
+        double rate = Double.parseDouble(s.substring(0, slash).trim());
+        int colon = s.indexOf(':', slash);
+        int burst = colon < 0 ? Math.max(1, (int) Math.ceil(rate)) : Integer.parseInt(s.substring(colon + 1).trim());
+        return tokenBucket(rate, burst);
+    }
+
+    /**
+     * @return 采样时为N(每条输出的日志代表N条)，令牌桶时为0
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    Limiter newLimiter() {
+        return sampleRate > 0 ? new SamplingLimiter(sampleRate) : new TokenBucketLimiter(permitsPerSecond, burst);
+    }
+
+    @Override
+    public String toString() {
+        return sampleRate > 0 ? "1in" + sampleRate : permitsPerSecond + "/s:" + burst;
+    }
+
+    abstract static class Limiter {
+        private final LongAdder passed = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+
+        final boolean tryAcquire() {
+            if (acquire()) {
+                passed.increment();
+                return true;
+            }
+            dropped.increment();
+            return false;
+        }
+
+        abstract boolean acquire();
+
+        long getPassed() {
+            return passed.sum();
+        }
+
+        long getDropped() {
+            return dropped.sum();
+        }
+    }
+
+    /**
+     * GCRA形式的令牌桶：只保存下一个令牌的理论到达时间，一次CAS完成判断
+     */
+    private final static class TokenBucketLimiter extends Limiter {
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+
+        TokenBucketLimiter(double permitsPerSecond, int burst) {
+            this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            this.toleranceNanos = intervalNanos * burst;
+        }
+
+        @Override
+        boolean acquire() {
+            long now = System.nanoTime();
+            for (; ; ) {
+                long tat = theoreticalArrival.get();
+                long next = (tat == Long.MIN_VALUE || tat - now < 0 ? now : tat) + intervalNanos;
+                if (next - now > toleranceNanos) {
+                    return false;
+                }
+                if (theoreticalArrival.compareAndSet(tat, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private final static class SamplingLimiter extends Limiter {
+        private final int n;
+        private final AtomicLong counter = new AtomicLong();
+
+        SamplingLimiter(int n) {
+            this.n = n;
+        }
+
+        @Override
+        boolean acquire() {
+            return counter.getAndIncrement() % n == 0;
+        }
+    }
+}
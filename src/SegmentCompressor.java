@@ -0,0 +1,284 @@
+import org.slf4j.helpers.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 在后台压缩已经写完的日志段(如{@link MappedFileSink}切换下来的段)，生成"段文件名.gz"后删除原文件
+ * <p>
+ * 每个文件切成固定大小的块，由线程池并行压缩，每块是一个独立的gzip member，按顺序拼接成多member的gzip文件，
+ * gunzip/zcat可以直接解压。{@link #submit(Path)}只把文件放入有界队列，队列满时返回false，不会阻塞调用者
+ * </p>
+ * <p>
+ * 限速：读取速度不超过maxBytesPerSecond；每个压缩线程的CPU占用不超过cpuFraction(压缩一块后按耗用的CPU时间休眠)
+ * </p>
+ */
+public final class SegmentCompressor {
+    private final static String SUFFIX = ".gz";
+    private final static String TMP_SUFFIX = ".gz.tmp";
+    private final static ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final int blockSize;
+    private final int level;
+    private final int parallelism;
+    private final long maxBytesPerSecond;
+    private final double cpuFraction;
+    private final ArrayBlockingQueue<Path> queue;
+    private final ExecutorService workers;
+    private final Thread coordinator;
+    private volatile boolean shutdown = false;
+
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicInteger inProgress = new AtomicInteger();
+
+    /**
+     * @param parallelism       压缩线程数
+     * @param blockSize         每个gzip member压缩的原始字节数
+     * @param level             java.util.zip.Deflater的压缩级别
+     * @param maxBacklog        排队等待压缩的文件数上限
+     * @param maxBytesPerSecond 读取原文件的速度上限，0表示不限
+     * @param cpuFraction       每个压缩线程最多占用一个CPU的比例，(0, 1]
+     */
+    public SegmentCompressor(int parallelism, int blockSize, int level, int maxBacklog, long maxBytesPerSecond,
+                             double cpuFraction) {
+        if (parallelism < 1 || blockSize < 1 || maxBacklog < 1 || maxBytesPerSecond < 0
+                || cpuFraction <= 0 || cpuFraction > 1) {
+            throw new IllegalArgumentException("parallelism: " + parallelism + ", blockSize: " + blockSize
+                    + ", maxBacklog: " + maxBacklog + ", maxBytesPerSecond: " + maxBytesPerSecond
+                    + ", cpuFraction: " + cpuFraction);
+        }
+        this.parallelism = parallelism;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.cpuFraction = cpuFraction;
+        this.queue = new ArrayBlockingQueue<>(maxBacklog);
+        this.workers = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "MyLogger-compress-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        this.coordinator = new Thread("MyLogger-compress-coordinator") {
+            @Override
+            public void run() {
+                runCoordinator();
+            }
+        };
+        coordinator.setDaemon(true);
+        coordinator.start();
+    }
+
+    /**
+     * @return false：已关闭或积压已满，文件保持不压缩
+     */
+    public boolean submit(Path segment) {
+        if (shutdown || !queue.offer(segment)) {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 不再接受新文件，等待已排队的文件压缩完
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        shutdown = true;
+        try {
+            coordinator.join(unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+    }
+
+    /**
+     * @return 排队和正在压缩的文件数
+     */
+    public int getBacklog() {
+        return queue.size() + inProgress.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    /**
+     * @return 因积压已满或已关闭而没有压缩的文件数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * @return 压缩后字节数/原字节数，还没有压缩过文件时返回0
+     */
+    public double getCompressionRatio() {
+        long in = bytesIn.sum();
+        return in == 0 ? 0 : (double) bytesOut.sum() / in;
+    }
+
+    private void runCoordinator() {
+        for (; ; ) {
+            Path segment;
+            try {
+                segment = queue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (segment == null) {
+                if (shutdown) {
+                    return;
+                }
+                continue;
+            }
+            inProgress.incrementAndGet();
+            try {
+                compress(segment);
+                completed.increment();
+            } catch (Exception e) {
+                failed.increment();
+                Util.report("MyLogger: failed to compress " + segment, e);
+            } finally {
+                inProgress.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 按顺序读取各块交给线程池，同时在途的块不超过2倍线程数，按顺序写出压缩结果
+     */
+    private void compress(Path segment) throws Exception {
+        Path tmp = segment.resolveSibling(segment.getFileName() + TMP_SUFFIX);
+        Path target = segment.resolveSibling(segment.getFileName() + SUFFIX);
+        long start = System.nanoTime();
+        long read = 0;
+        long written = 0;
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        try (InputStream in = Files.newInputStream(segment);
+             OutputStream out = Files.newOutputStream(tmp)) {
+            for (; ; ) {
+                final byte[] block = readBlock(in);
+                if (block == null) {
+                    break;
+                }
+                read += block.length;
+                throttleIo(read, start);
+                pending.add(workers.submit(() -> compressBlock(block)));
+                while (pending.size() >= parallelism * 2) {
+                    written += writeNext(pending, out);
+                }
+            }
+            while (!pending.isEmpty()) {
+                written += writeNext(pending, out);
+            }
+        } catch (Exception e) {
+            for (Future<byte[]> future : pending) {
+                future.cancel(false);
+            }
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(segment);
+        bytesIn.add(read);
+        bytesOut.add(written);
+    }
+
+    private static long writeNext(ArrayDeque<Future<byte[]>> pending, OutputStream out) throws Exception {
+        byte[] compressed = pending.poll().get();
+        out.write(compressed);
+        return compressed.length;
+    }
+
+    private byte[] readBlock(InputStream in) throws IOException {
+        byte[] block = new byte[blockSize];
+        int n = 0;
+        while (n < blockSize) {
+            int r = in.read(block, n, blockSize - n);
+            if (r < 0) {
+                break;
+            }
+            n += r;
+        }
+        if (n == 0) {
+            return null;
+        }
+        return n == blockSize ? block : Arrays.copyOf(block, n);
+    }
+
+    /**
+     * 读取速度超过上限时休眠
+     */
+    private void throttleIo(long read, long startNanos) throws InterruptedException {
+        if (maxBytesPerSecond == 0) {
+            return;
+        }
+        long expectedNanos = (long) (read * 1e9 / maxBytesPerSecond);
+        long aheadNanos = expectedNanos - (System.nanoTime() - startNanos);
+        if (aheadNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        }
+    }
+
+    /**
+     * 把一块压缩成一个完整的gzip member，按占用的CPU时间休眠以满足cpuFraction
+     */
+    private byte[] compressBlock(byte[] block) throws IOException, InterruptedException {
+        long cpuStart = cpuTimeNanos();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(block.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(buf, 8192) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(block);
+        }
+        if (cpuFraction < 1) {
+            long used = cpuTimeNanos() - cpuStart;
+            TimeUnit.NANOSECONDS.sleep((long) (used * (1 / cpuFraction - 1)));
+        }
+        return buf.toByteArray();
+    }
+
+    private static long cpuTimeNanos() {
+        if (threadMXBean.isCurrentThreadCpuTimeSupported()) {
+            return threadMXBean.getCurrentThreadCpuTime();
+        }
+        return System.nanoTime();
+    }
+}
@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 把异常栈直接写入任意Appendable，格式与Throwable.printStackTrace()一致，另外可以：
+ * <ul>
+ * <li>限制每段异常输出的栈帧数</li>
+ * <li>合并连续重复的栈帧(递归)以及连续属于指定包前缀的栈帧(如反射、框架代码)</li>
+ * <li>按异常指纹(异常类+栈帧)去重：相同的异常栈只完整输出一次，之后只输出一个短id引用</li>
+ * </ul>
+ * {@link MyLogger#getStackTrace(Throwable)}和文本sink使用{@link #fromSystemProperties()}配置的实例，
+ * 也可以用{@link MyLogger#setStackTraceRenderer}替换
+ */
+public final class StackTraceRenderer {
+    /**
+     * 不做任何裁剪，输出与printStackTrace()相同
+     */
+    public final static StackTraceRenderer FULL = new StackTraceRenderer(Integer.MAX_VALUE, false, new String[0], 0);
+
+    private final static String LINE_SEPARATOR = System.getProperty("line.separator");
+    private final static String CAUSE_CAPTION = "Caused by: ";
+    private final static String SUPPRESSED_CAPTION = "Suppressed: ";
+
+    private final int maxFrames;
+    private final boolean collapseRepeated;
+    private final String[] collapsedPackages;
+    private final int cacheSize;
+    private final ConcurrentHashMap<Long, String> renderedIds;
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * @param maxFrames         每段异常最多输出的栈帧数
+     * @param collapseRepeated  连续重复的栈帧只输出一次
+     * @param collapsedPackages 连续属于这些包前缀的栈帧只输出第一帧，其余合并为一行
+     * @param cacheSize         记住的异常指纹个数，0表示不去重
+     */
+    public StackTraceRenderer(int maxFrames, boolean collapseRepeated, String[] collapsedPackages, int cacheSize) {
+        if (maxFrames < 1) {
+            throw new IllegalArgumentException("maxFrames: " + maxFrames);
+        }
+        this.maxFrames = maxFrames;
+        this.collapseRepeated = collapseRepeated;
+        this.collapsedPackages = collapsedPackages.clone();
+        this.cacheSize = cacheSize;
+        this.renderedIds = cacheSize > 0 ? new ConcurrentHashMap<Long, String>() : null;
+    }
+
+    /**
+     * 系统属性：mylogger.stackTrace.maxFrames(默认不限制)、mylogger.stackTrace.collapseRepeated(默认false)、
+     * mylogger.stackTrace.collapsedPackages(逗号分隔的包前缀)、mylogger.stackTrace.dedupeSize(默认0，不去重)
+     *
+     * @return 都没有设置时返回{@link #FULL}
+     */
+    static StackTraceRenderer fromSystemProperties() {
+        int maxFrames = Integer.getInteger("mylogger.stackTrace.maxFrames", Integer.MAX_VALUE);
+        boolean collapseRepeated = Boolean.parseBoolean(
+                System.getProperty("mylogger.stackTrace.collapseRepeated", "false"));
+        String packages = System.getProperty("mylogger.stackTrace.collapsedPackages", "").trim();
+        String[] collapsedPackages = packages.isEmpty() ? new String[0] : packages.split("\\s*,\\s*");
+        int cacheSize = Integer.getInteger("mylogger.stackTrace.dedupeSize", 0);
+        if (maxFrames == Integer.MAX_VALUE && !collapseRepeated && collapsedPackages.length == 0 && cacheSize <= 0) {
+            return FULL;
+        }
+        return new StackTraceRenderer(maxFrames, collapseRepeated, collapsedPackages, cacheSize);
+    }
+
+    /**
+     * @return 由异常链中每个异常的类名和栈帧计算的指纹，不包含message
+     */
+    public static long fingerprint(Throwable t) {
+        long h = 1125899906842597L;
+        Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+        while (t != null && seen.add(t)) {
+            h = 31 * h + t.getClass().getName().hashCode();
+            for (StackTraceElement ele : t.getStackTrace()) {
+                h = 31 * h + ele.hashCode();
+            }
+            t = t.getCause();
+        }
+        return h;
+    }
+
+    public String render(Throwable t) {
+        StringBuilder buf = new StringBuilder(1024);
+        try {
+            render(t, buf);
+        } catch (IOException e) {
+            // StringBuilder不会抛出IOException
+        }
+        return buf.toString();
+    }
+
+    public void render(Throwable t, Appendable out) throws IOException {
+        if (renderedIds != null) {
+            Long key = fingerprint(t);
+            String id = renderedIds.get(key);
+            if (id != null) {
+                out.append(String.valueOf(t)).append(LINE_SEPARATOR)
+                        .append("\t[stack trace #").append(id).append(" omitted, logged before]").append(LINE_SEPARATOR);
+                return;
+            }
+            if (renderedIds.size() >= cacheSize) {
+                renderedIds.clear();
+            }
+            id = Integer.toHexString(nextId.incrementAndGet());
+            String existing = renderedIds.putIfAbsent(key, id);
+            if (existing != null) {
+                id = existing;
+            }
+            out.append("[stack trace #").append(id).append("] ");
+        }
+        Set<Throwable> dejaVu = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+        dejaVu.add(t);
+        out.append(String.valueOf(t)).append(LINE_SEPARATOR);
+        StackTraceElement[] trace = t.getStackTrace();
+        appendFrames(out, trace, trace.length - 1, "");
+        for (Throwable se : t.getSuppressed()) {
+            appendEnclosed(out, se, trace, SUPPRESSED_CAPTION, "\t", dejaVu);
+        }
+        Throwable cause = t.getCause();
+        if (cause != null) {
+            appendEnclosed(out, cause, trace, CAUSE_CAPTION, "", dejaVu);
+        }
+    }
+
+    private void appendEnclosed(Appendable out, Throwable t, StackTraceElement[] enclosingTrace,
+                                String caption, String prefix, Set<Throwable> dejaVu) throws IOException {
+        if (!dejaVu.add(t)) {
+            out.append(prefix).append(caption).append("[CIRCULAR REFERENCE: ").append(String.valueOf(t)).append(']')
+                    .append(LINE_SEPARATOR);
+            return;
+        }
+        StackTraceElement[] trace = t.getStackTrace();
+        int m = trace.length - 1;
+        int n = enclosingTrace.length - 1;
+        while (m >= 0 && n >= 0 && trace[m].equals(enclosingTrace[n])) {
+            m--;
+            n--;
+        }
+        int framesInCommon = trace.length - 1 - m;
+        out.append(prefix).append(caption).append(String.valueOf(t)).append(LINE_SEPARATOR);
+        appendFrames(out, trace, m, prefix);
+        if (framesInCommon != 0) {
+            out.append(prefix).append("\t... ").append(String.valueOf(framesInCommon)).append(" more")
+                    .append(LINE_SEPARATOR);
+        }
+        for (Throwable se : t.getSuppressed()) {
+            appendEnclosed(out, se, trace, SUPPRESSED_CAPTION, prefix + "\t", dejaVu);
+        }
+        Throwable cause = t.getCause();
+        if (cause != null) {
+            appendEnclosed(out, cause, trace, CAUSE_CAPTION, prefix, dejaVu);
+        }
+    }
+
+    /**
+     * 输出trace[0..last]
+     */
+    private void appendFrames(Appendable out, StackTraceElement[] trace, int last, String prefix) throws IOException {
+        int printed = 0;
+        int i = 0;
+        while (i <= last) {
+            if (printed >= maxFrames) {
+                out.append(prefix).append("\t... ").append(String.valueOf(last - i + 1)).append(" frames truncated")
+                        .append(LINE_SEPARATOR);
+                return;
+            }
+            StackTraceElement ele = trace[i];
+            out.append(prefix).append("\tat ").append(ele.toString()).append(LINE_SEPARATOR);
+            printed++;
+            int j = i + 1;
+            while (collapseRepeated && j <= last && trace[j].equals(ele)) {
+                j++;
+            }
+            if (j - i > 1) {
+                out.append(prefix).append("\t... repeated ").append(String.valueOf(j - i - 1)).append(" times")
+                        .append(LINE_SEPARATOR);
+                i = j;
+                continue;
+            }
+            String collapsed = collapsedPackage(ele.getClassName());
+            if (collapsed != null) {
+                while (j <= last && collapsed.equals(collapsedPackage(trace[j].getClassName()))) {
+                    j++;
+                }
+                if (j - i > 1) {
+                    out.append(prefix).append("\t... ").append(String.valueOf(j - i - 1)).append(" frames in ")
+                            .append(collapsed).append(LINE_SEPARATOR);
+                }
+            }
+            i = j;
+        }
+    }
+
+    private String collapsedPackage(String className) {
+        for (String pkg : collapsedPackages) {
+            if (className.startsWith(pkg)) {
+                return pkg;
+            }
+        }
+        return null;
+    }
+}
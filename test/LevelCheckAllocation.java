@@ -0,0 +1,79 @@
+import org.slf4j.Logger;
+import org.slf4j.spi.LocationAwareLogger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+
+/**
+ * 检查级别判断的快速路径不分配对象：未开启的级别调用isXxxEnabled和xxx(...)若干次，比较当前线程分配的字节数
+ * <pre>
+ * javac -cp slf4j-api.jar -d out src/*.java test/LevelCheckAllocation.java
+ * java -cp out:slf4j-api.jar LevelCheckAllocation
+ * </pre>
+ * 失败时以状态1退出
+ */
+public class LevelCheckAllocation {
+    private final static int ITERATIONS = 1000000;
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("SKIP: thread allocated memory is not supported");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        MyLogger logger = new MyLogger(infoLogger(), LevelCheckAllocation.class);
+        Object arg1 = "a";
+        Object arg2 = "b";
+        Object[] argArray = {"a", "b", "c"};
+        // 预热，并让缓存的级别状态生效
+        long count = run(logger, arg1, arg2, argArray, ITERATIONS);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        count += run(logger, arg1, arg2, argArray, ITERATIONS);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        System.out.println("enabled=" + count + " allocated=" + allocated + " bytes");
+        // 后台刷新使缓存失效时重新读取后端级别，允许少量分配
+        if (count != 0 || allocated > 64 * 1024) {
+            System.out.println("FAIL");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static long run(MyLogger logger, Object arg1, Object arg2, Object[] argArray, int iterations) {
+        long count = 0;
+        for (int i = 0; i < iterations; i++) {
+            if (logger.isDebugEnabled()) {
+                count++;
+            }
+            if (logger.isTraceEnabled(null)) {
+                count++;
+            }
+            logger.debug("x {}", arg1);
+            logger.debug("x {} {}", arg1, arg2);
+            logger.debug("x {} {} {}", argArray);
+            logger.trace("x");
+        }
+        return count;
+    }
+
+    /**
+     * 只开启INFO及以上级别的后端
+     */
+    private static Logger infoLogger() {
+        return (Logger) Proxy.newProxyInstance(LevelCheckAllocation.class.getClassLoader(),
+                new Class<?>[]{LocationAwareLogger.class}, (proxy, method, methodArgs) -> {
+                    String name = method.getName();
+                    if (name.equals("getName")) {
+                        return "check";
+                    }
+                    if (name.startsWith("is")) {
+                        return name.equals("isInfoEnabled") || name.equals("isWarnEnabled")
+                                || name.equals("isErrorEnabled");
+                    }
+                    return null;
+                });
+    }
+}
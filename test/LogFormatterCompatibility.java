@@ -0,0 +1,181 @@
+import org.slf4j.Logger;
+import org.slf4j.helpers.FormattingTuple;
+import org.slf4j.helpers.MessageFormatter;
+import org.slf4j.spi.LocationAwareLogger;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 检查{@link LogFormatter#formatTo}与slf4j的MessageFormatter逐字符一致：转义、数组参数、自引用数组、
+ * toString()失败、末尾Throwable参数以及long/double参数。每个用例格式化3次，第1次逐字符查找，
+ * 之后走{@link FormatTemplate}缓存的模板。另外通过{@link MyLogger}的重载调用，检查null的包装类型、char、float
+ * 和两个Long参数仍然按Object参数输出
+ * <pre>
+ * javac -cp slf4j-api.jar -d out src/*.java test/LogFormatterCompatibility.java
+ * java -cp out:slf4j-api.jar LogFormatterCompatibility
+ * </pre>
+ * 有不一致时输出用例并以状态1退出
+ */
+public class LogFormatterCompatibility {
+    private final static int ROUNDS = 3;
+
+    private static int cases = 0;
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        Exception e = new Exception("x");
+        Object[] self = new Object[2];
+        self[0] = 1;
+        self[1] = self;
+        Object badToString = new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("bad");
+            }
+        };
+        String[] patterns = {"", "a", "{}", "a {}", "a {} b {}", "{}{}{}", "\\{}", "a \\{} {}", "a \\\\{} {}",
+                "\\\\{}", "x{", "x}", "{ }", "a {} {} {}", "\\{}\\{}{}", "abc\\", "{}\\", "{}\\{}", "中文{}值"};
+        Object[][] argLists = {
+                {1}, {null}, {1, 2}, {"s", e}, {e}, {1, 2, 3},
+                {new int[]{1, 2}, new double[]{1.5}},
+                {self},
+                {new boolean[]{true}, new char[]{'a', 'b'}},
+                {new long[0], new byte[]{1}, new short[]{2}, new float[]{3f}},
+                {badToString},
+                {new Object[]{1, new String[]{"a"}}},
+                {1, e}, {1, 2, e}
+        };
+        long hitsBefore = FormatTemplate.getHitCount();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String pattern : patterns) {
+                for (Object[] argList : argLists) {
+                    check(pattern, argList);
+                }
+                checkPrimitives(pattern);
+            }
+            check(null, 1);
+            check("a {}");
+            checkCallSites();
+        }
+        long templateHits = FormatTemplate.getHitCount() - hitsBefore;
+        System.out.println(cases + " cases, " + failures + " failures, " + templateHits + " template hits");
+        // 没有关闭缓存时第2、3次必须走模板，否则这里没有覆盖到FormatTemplate
+        boolean cacheEnabled = Integer.getInteger("mylogger.formatCache.size", 1) > 0;
+        if (failures > 0 || (cacheEnabled && templateHits == 0)) {
+            System.out.println("FAIL");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * 分别按1个参数、2个参数、参数数组调用
+     */
+    private static void check(String pattern, Object... argArray) {
+        if (argArray.length == 1) {
+            Throwable throwable = LogFormatter.getThrowableCandidate(1, argArray[0], null, null);
+            StringBuilder out = new StringBuilder();
+            LogFormatter.formatTo(out, pattern, 1, argArray[0], null, null, throwable, 0, 0L, 0L);
+            compare(MessageFormatter.format(pattern, argArray[0]), pattern, out, throwable, argArray);
+        }
+        if (argArray.length == 2) {
+            Throwable throwable = LogFormatter.getThrowableCandidate(2, argArray[0], argArray[1], null);
+            StringBuilder out = new StringBuilder();
+            LogFormatter.formatTo(out, pattern, 2, argArray[0], argArray[1], null, throwable, 0, 0L, 0L);
+            compare(MessageFormatter.format(pattern, argArray[0], argArray[1]), pattern, out, throwable, argArray);
+        }
+        Throwable throwable = LogFormatter.getThrowableCandidate(LogFormatter.ARG_ARRAY, null, null, argArray);
+        StringBuilder out = new StringBuilder();
+        LogFormatter.formatTo(out, pattern, LogFormatter.ARG_ARRAY, null, null, argArray, throwable, 0, 0L, 0L);
+        compare(MessageFormatter.arrayFormat(pattern, argArray), pattern, out, throwable, argArray);
+    }
+
+    /**
+     * long/double参数不装箱，与装箱后的对象参数比较
+     */
+    private static void checkPrimitives(String pattern) {
+        long l = -42L;
+        double d = 0.1;
+        StringBuilder out = new StringBuilder();
+        LogFormatter.formatTo(out, pattern, 2, null, null, null, null,
+                LogFormatter.primitiveTypes(LogFormatter.ARG_LONG, LogFormatter.ARG_DOUBLE),
+                l, Double.doubleToRawLongBits(d));
+        compare(MessageFormatter.format(pattern, l, d), pattern, out, null, new Object[]{l, d});
+    }
+
+    /**
+     * 以前解析到Object/可变参数重载的调用，输出必须不变
+     */
+    private static void checkCallSites() {
+        final String[] message = new String[1];
+        Logger backend = (Logger) Proxy.newProxyInstance(LogFormatterCompatibility.class.getClassLoader(),
+                new Class<?>[]{LocationAwareLogger.class}, (proxy, method, methodArgs) -> {
+                    String name = method.getName();
+                    if (name.equals("getName")) {
+                        return "compatibility";
+                    }
+                    if (name.startsWith("is")) {
+                        return true;
+                    }
+                    if (name.equals("log")) {
+                        message[0] = (String) methodArgs[3];
+                    }
+                    return null;
+                });
+        MyLogger logger = new MyLogger(backend, LogFormatterCompatibility.class);
+        Integer nullInteger = null;
+        Long a = 1L;
+        Long b = 2L;
+        char c = 'x';
+        float f = 0.1f;
+        int i = 7;
+
+        logger.info("n={}", nullInteger);
+        compareMessage(MessageFormatter.format("n={}", nullInteger), message[0], "(Integer) null");
+        logger.info("c={}", c);
+        compareMessage(MessageFormatter.format("c={}", c), message[0], "char");
+        logger.info("f={}", f);
+        compareMessage(MessageFormatter.format("f={}", f), message[0], "float");
+        logger.info("i={}", i);
+        compareMessage(MessageFormatter.format("i={}", i), message[0], "int");
+        logger.info("a={} b={}", a, b);
+        compareMessage(MessageFormatter.format("a={} b={}", a, b), message[0], "Long, Long");
+        logger.info("a={} f={}", a, f);
+        compareMessage(MessageFormatter.format("a={} f={}", a, f), message[0], "Long, float");
+        logger.infoLong("l={}", -42L);
+        compareMessage(MessageFormatter.format("l={}", -42L), message[0], "infoLong(long)");
+        logger.infoLong("s={} l={}", "s", -42L);
+        compareMessage(MessageFormatter.format("s={} l={}", "s", -42L), message[0], "infoLong(Object, long)");
+        logger.infoLong("x={} y={}", 1L, 2L);
+        compareMessage(MessageFormatter.format("x={} y={}", 1L, 2L), message[0], "infoLong(long, long)");
+        logger.infoDouble("d={}", 0.1);
+        compareMessage(MessageFormatter.format("d={}", 0.1), message[0], "infoDouble(double)");
+
+        // LogUtil的后端由slf4j绑定决定，这里只检查这些调用能编译、不抛出异常
+        LogUtil.info("n={}", nullInteger);
+        LogUtil.info("c={} f={}", c, f);
+        LogUtil.info("a={} b={}", a, b);
+    }
+
+    private static void compareMessage(FormattingTuple expected, String actual, String description) {
+        cases++;
+        if (!Objects.equals(expected.getMessage(), actual)) {
+            failures++;
+            System.out.println("MISMATCH call site " + description + " expected='" + expected.getMessage()
+                    + "' actual='" + actual + "'");
+        }
+    }
+
+    private static void compare(FormattingTuple expected, String pattern, StringBuilder out, Throwable throwable,
+                                Object[] argArray) {
+        cases++;
+        String actual = pattern == null ? null : out.toString();
+        if (!Objects.equals(expected.getMessage(), actual) || expected.getThrowable() != throwable) {
+            failures++;
+            System.out.println("MISMATCH pattern=" + pattern + " args=" + Arrays.deepToString(argArray)
+                    + " expected='" + expected.getMessage() + "' actual='" + actual + "'");
+        }
+    }
+}